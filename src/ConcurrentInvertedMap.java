@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe inverted index without a global lock. Words are kept in a
+ * concurrent skip list, and the locations and positions of each word in a
+ * TreeMap guarded by its own monitor, so adding pages that share no words runs
+ * in parallel and a search only waits for a writer that is changing one of the
+ * words it reads. The word count of each location is kept in a concurrent map.
+ *
+ * A search that runs while pages are being added sees every word of a page
+ * added before it started, and may see part of a page added at the same time.
+ */
+public class ConcurrentInvertedMap implements WritableIndexInterface {
+
+	// word, location, position
+	private final ConcurrentSkipListMap<String, TreeMap<String, PositionList>> index;
+	private final ConcurrentHashMap<String, Integer> lengths;
+	private final AtomicInteger words;
+	private final AtomicLong version;
+
+	/**
+	 * Initialize
+	 */
+	public ConcurrentInvertedMap() {
+		this.index = new ConcurrentSkipListMap<>();
+		this.lengths = new ConcurrentHashMap<>();
+		this.words = new AtomicInteger();
+		this.version = new AtomicLong();
+	}
+
+	/**
+	 * Give the locations and positions of this word, adding the word if necessary
+	 *
+	 * @param word the word to look up or add
+	 * @return the postings of this word, only used while holding its monitor
+	 */
+	private TreeMap<String, PositionList> postings(String word) {
+		TreeMap<String, PositionList> postings = index.get(word);
+		if (postings == null) {
+			TreeMap<String, PositionList> created = new TreeMap<>();
+			postings = index.putIfAbsent(word, created);
+			if (postings == null) {
+				words.incrementAndGet();
+				postings = created;
+			}
+		}
+		return postings;
+	}
+
+	@Override
+	public void add(String word, String location, int position) {
+		// the length is counted first, so a search never sees a position without it
+		lengths.merge(location, 1, Integer::sum);
+		TreeMap<String, PositionList> postings = postings(word);
+		synchronized (postings) {
+			PositionList list = postings.get(location);
+			if (list == null) {
+				list = new PositionList();
+				postings.put(location, list);
+			}
+			list.add(position);
+		}
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Add a temporary inverted index to this index. Only one word of this index
+	 * is locked at a time, so other threads can add or search other words. The
+	 * word counts are added first, so a search never scores a location by
+	 * positions added before its count.
+	 *
+	 * @param other inverted index
+	 */
+	@Override
+	public void addAll(InvertedMap other) {
+		for (String location : other.allLocations()) {
+			lengths.merge(location, other.totalWord(location), Integer::sum);
+		}
+		IndexCursor cursor = other.cursor();
+		while (cursor.nextWord()) {
+			TreeMap<String, PositionList> postings = postings(cursor.word());
+			synchronized (postings) {
+				while (cursor.nextLocation()) {
+					String location = cursor.location();
+					PositionList list = postings.get(location);
+					if (list == null) {
+						postings.put(location, new PositionList(cursor.positions()));
+					} else {
+						list.addAll(cursor.positions());
+					}
+				}
+			}
+		}
+		version.incrementAndGet();
+	}
+
+	@Override
+	public long version() {
+		return version.get();
+	}
+
+	@Override
+	public int totalWord(String location) {
+		return lengths.getOrDefault(location, 0);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return index.containsKey(word);
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		TreeMap<String, PositionList> postings = index.get(word);
+		if (postings == null) {
+			return false;
+		}
+		synchronized (postings) {
+			return postings.containsKey(location);
+		}
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		TreeMap<String, PositionList> postings = index.get(word);
+		if (postings == null) {
+			return false;
+		}
+		synchronized (postings) {
+			PositionList list = postings.get(location);
+			return list != null && list.contains(position);
+		}
+	}
+
+	@Override
+	public int words() {
+		return words.get();
+	}
+
+	@Override
+	public int locations(String word) {
+		TreeMap<String, PositionList> postings = index.get(word);
+		if (postings == null) {
+			return 0;
+		}
+		synchronized (postings) {
+			return postings.size();
+		}
+	}
+
+	@Override
+	public int positions(String word, String location) {
+		TreeMap<String, PositionList> postings = index.get(word);
+		if (postings == null) {
+			return 0;
+		}
+		synchronized (postings) {
+			PositionList list = postings.get(location);
+			return list == null ? 0 : list.size();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryLine) {
+		return exactSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryLine, int limit) {
+		ArrayList<Result> results = new ArrayList<>();
+		HashMap<String, Result> found = new HashMap<>();
+		for (String word : queryLine) {
+			TreeMap<String, PositionList> postings = index.get(word);
+			if (postings != null) {
+				searchWork(found, postings, results);
+			}
+		}
+		return ResultHeap.top(results, limit);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryLine) {
+		return partialSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryLine, int limit) {
+		ArrayList<Result> results = new ArrayList<>();
+		HashMap<String, Result> found = new HashMap<>();
+		for (String word : queryLine) {
+			for (Map.Entry<String, TreeMap<String, PositionList>> entry : index.tailMap(word).entrySet()) {
+				if (entry.getKey().startsWith(word)) {
+					searchWork(found, entry.getValue(), results);
+				} else {
+					break;
+				}
+			}
+		}
+		return ResultHeap.top(results, limit);
+	}
+
+	/**
+	 * The helper method that do the search
+	 *
+	 * @param found    the Result of every location found so far
+	 * @param postings the locations and positions of one word of the query
+	 * @param list     the arrayList that stores Result
+	 */
+	private void searchWork(HashMap<String, Result> found, TreeMap<String, PositionList> postings,
+			ArrayList<Result> list) {
+		synchronized (postings) {
+			for (Map.Entry<String, PositionList> entry : postings.entrySet()) {
+				String location = entry.getKey();
+				int totalMatched = entry.getValue().size();
+				Result r = found.get(location);
+				if (r != null) {
+					r.setMatch(totalMatched);
+				} else {
+					r = new Result(location, totalMatched, totalWord(location));
+					list.add(r);
+					found.put(location, r);
+				}
+			}
+		}
+	}
+
+	@Override
+	public IndexCursor cursor() {
+		return new Cursor(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Give a cursor over a range of words. The skip list has no index by number,
+	 * so the words before the range are stepped over one by one.
+	 */
+	@Override
+	public IndexCursor cursor(int from, int to) {
+		return new Cursor(from, to);
+	}
+
+	@Override
+	public IndexSnapshot freeze() {
+		return IndexSnapshot.build(cursor(), new TreeMap<>(lengths));
+	}
+
+	@Override
+	public void write(Path outputPath) throws IOException {
+		TreeJSONWriter.asHighNestedObject(cursor(), outputPath);
+	}
+
+	@Override
+	public void writeLocation(Path outputPath) throws IOException {
+		TreeMap<String, Integer> wordTotal = new TreeMap<>(lengths);
+		try (var writer = TreeJSONWriter.newWriter(outputPath)) {
+			TreeJSONWriter.asObject(wordTotal, writer, 0);
+		}
+	}
+
+	/**
+	 * Override toString method
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("{");
+		IndexCursor cursor = cursor();
+		boolean firstWord = true;
+		while (cursor.nextWord()) {
+			builder.append(firstWord ? "" : ", ").append(cursor.word()).append("={");
+			boolean firstLocation = true;
+			while (cursor.nextLocation()) {
+				builder.append(firstLocation ? "" : ", ").append(cursor.location()).append('=');
+				builder.append(cursor.positions());
+				firstLocation = false;
+			}
+			builder.append('}');
+			firstWord = false;
+		}
+		return builder.append('}').toString();
+	}
+
+	/**
+	 * Walks the words in sorted order, copying the locations and positions of
+	 * each word while holding its monitor so writers can keep adding to it
+	 */
+	private class Cursor implements IndexCursor {
+
+		private final Iterator<Map.Entry<String, TreeMap<String, PositionList>>> entries;
+		private int remaining;
+		private String word;
+		private String[] locations;
+		private PositionList[] positions;
+		private int size;
+		private int next;
+
+		/**
+		 * Initialize the cursor before the first word of the range
+		 *
+		 * @param from the number of the first word in sorted order, inclusive
+		 * @param to   the number of the last word in sorted order, exclusive
+		 */
+		public Cursor(int from, int to) {
+			this.entries = index.entrySet().iterator();
+			this.remaining = Math.max(to - from, 0);
+			this.locations = new String[0];
+			this.positions = new PositionList[0];
+			for (int i = 0; i < from && entries.hasNext(); i++) {
+				entries.next();
+			}
+		}
+
+		@Override
+		public boolean nextWord() {
+			if (remaining == 0 || !entries.hasNext()) {
+				return false;
+			}
+			remaining--;
+			Map.Entry<String, TreeMap<String, PositionList>> entry = entries.next();
+			word = entry.getKey();
+			TreeMap<String, PositionList> postings = entry.getValue();
+			synchronized (postings) {
+				size = postings.size();
+				if (locations.length < size) {
+					locations = new String[size];
+					positions = new PositionList[size];
+				}
+				int i = 0;
+				for (Map.Entry<String, PositionList> location : postings.entrySet()) {
+					locations[i] = location.getKey();
+					positions[i] = new PositionList(location.getValue());
+					i++;
+				}
+			}
+			next = -1;
+			return true;
+		}
+
+		@Override
+		public String word() {
+			return word;
+		}
+
+		@Override
+		public boolean nextLocation() {
+			return ++next < size;
+		}
+
+		@Override
+		public String location() {
+			return locations[next];
+		}
+
+		@Override
+		public PositionList positions() {
+			return positions[next];
+		}
+	}
+}
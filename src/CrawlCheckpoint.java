@@ -0,0 +1,343 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves the state of a crawl to a directory from time to time, so a crawl that
+ * dies can be resumed without fetching again the pages it had finished.
+ *
+ * A page is finished once its words are in the index and its links are
+ * claimed. Each checkpoint writes the words of the pages finished since the
+ * last one as an {@link IndexSnapshot} segment, with the list of those pages
+ * next to it, and then replaces the manifest, which names the number of
+ * segments and every URL claimed but not finished yet. A URL stays in the
+ * unfinished list until a segment holding it is written, so a page finished
+ * after a checkpoint is fetched again on resume rather than lost.
+ *
+ * The crawling threads only add to a map and a list. Merging, encoding and
+ * writing happen on the checkpoint thread, so crawling is only held up for
+ * the moment it takes to swap the list of finished pages.
+ *
+ * <pre>
+ * manifest         seed, limit, segments, then "depth url" of each unfinished URL
+ * segment-N.bin    the words of the pages finished for checkpoint N
+ * segment-N.done   the URL of each page finished for checkpoint N
+ * </pre>
+ */
+public class CrawlCheckpoint {
+
+	/** The default time between checkpoints */
+	public static final long DEFAULT_INTERVAL_MILLIS = 30_000;
+
+	private static final String MANIFEST = "manifest";
+
+	private final Path directory;
+	private final long intervalMillis;
+	private final boolean resume;
+
+	/** The URLs claimed but not in a segment yet, and their depth */
+	private final ConcurrentHashMap<String, Integer> unfinished;
+
+	/** The pages finished since the last checkpoint, guarded by this */
+	private ArrayList<Finished> finished;
+
+	private URL seed;
+	private int limit;
+	private int segments;
+	private Thread writer;
+
+	private long checkpoints;
+	private long pages;
+	private long bytes;
+	private long nanos;
+
+	/**
+	 * Initialize checkpoints of a crawl
+	 *
+	 * @param directory      the directory to write the checkpoints to
+	 * @param intervalMillis the time between checkpoints
+	 * @param resume         true to continue from the checkpoint in the
+	 *                       directory, if there is one
+	 */
+	public CrawlCheckpoint(Path directory, long intervalMillis, boolean resume) {
+		this.directory = directory;
+		this.intervalMillis = intervalMillis;
+		this.resume = resume;
+		this.unfinished = new ConcurrentHashMap<>();
+		this.finished = new ArrayList<>();
+	}
+
+	/**
+	 * Start checkpointing a crawl. When resuming, the words of the finished pages
+	 * are added to the index and the finished pages are added to the seen set.
+	 *
+	 * @param seed  the seed URL of the crawl
+	 * @param limit the most URLs the crawl may claim
+	 * @param index the index to add the finished pages to
+	 * @param seen  the set of URLs claimed by the crawl
+	 * @return the URLs to queue with their depth: the unfinished ones when
+	 *         resuming, or only the seed
+	 * @throws IOException if unable to read or write the checkpoint directory
+	 */
+	public ArrayList<Map.Entry<URL, Integer>> start(URL seed, int limit, WritableIndexInterface index,
+			SeenUrlSet seen) throws IOException {
+		this.seed = seed;
+		this.limit = limit;
+		this.segments = 0;
+		unfinished.clear();
+		synchronized (this) {
+			finished = new ArrayList<>();
+		}
+		Files.createDirectories(directory);
+		ArrayList<Map.Entry<URL, Integer>> queue = new ArrayList<>();
+		Path manifest = directory.resolve(MANIFEST);
+		if (resume && Files.exists(manifest)) {
+			restore(manifest, index, seen, queue);
+		} else {
+			Files.deleteIfExists(manifest);
+			queue.add(Map.entry(seed, 0));
+		}
+
+		writer = new Thread(this::write, "checkpoint");
+		writer.setDaemon(true);
+		writer.start();
+		return queue;
+	}
+
+	/**
+	 * Stop checkpointing, writing a last checkpoint
+	 *
+	 * @throws IOException if unable to write the checkpoint
+	 */
+	public void stop() throws IOException {
+		if (writer == null) {
+			return;
+		}
+		writer.interrupt();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writer = null;
+		checkpoint();
+	}
+
+	/**
+	 * Record a URL claimed by the crawl. It is recorded before it is queued, so it
+	 * cannot be finished before it is claimed.
+	 *
+	 * @param url   the URL
+	 * @param depth the number of links followed from the seed
+	 * @return true if the URL was not recorded before
+	 */
+	public boolean claimed(URL url, int depth) {
+		return unfinished.putIfAbsent(url.toString(), depth) == null;
+	}
+
+	/**
+	 * Forget a URL recorded as claimed that the crawl did not claim after all
+	 *
+	 * @param url the URL
+	 */
+	public void rejected(URL url) {
+		unfinished.remove(url.toString());
+	}
+
+	/**
+	 * Record a page whose words are in the index and whose links are claimed
+	 *
+	 * @param url   the page
+	 * @param words the words of the page, or null if it had none
+	 */
+	public void finished(URL url, InvertedMap words) {
+		Finished page = new Finished(url.toString(), words);
+		synchronized (this) {
+			finished.add(page);
+		}
+	}
+
+	/**
+	 * Write a checkpoint every interval until interrupted
+	 */
+	private void write() {
+		while (true) {
+			try {
+				Thread.sleep(intervalMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				checkpoint();
+			} catch (IOException e) {
+				System.out.println("Unable to write the crawl checkpoint to path: " + directory);
+			}
+		}
+	}
+
+	/**
+	 * Write a segment of the pages finished since the last checkpoint, then the
+	 * manifest of every URL not finished yet
+	 *
+	 * @throws IOException if unable to write the checkpoint
+	 */
+	public void checkpoint() throws IOException {
+		long start = System.nanoTime();
+		ArrayList<Finished> batch;
+		synchronized (this) {
+			batch = finished;
+			finished = new ArrayList<>();
+		}
+
+		if (!batch.isEmpty()) {
+			int segment = segments + 1;
+			InvertedMap words = new InvertedMap();
+			ArrayList<String> urls = new ArrayList<>(batch.size());
+			for (Finished page : batch) {
+				if (page.words != null) {
+					words.addAll(page.words);
+				}
+				urls.add(page.url);
+			}
+			Path index = directory.resolve("segment-" + segment + ".bin");
+			words.freeze().save(index);
+			Path done = directory.resolve("segment-" + segment + ".done");
+			Files.write(done, urls, StandardCharsets.UTF_8);
+			bytes += Files.size(index) + Files.size(done);
+			segments = segment;
+			for (String url : urls) {
+				unfinished.remove(url);
+			}
+			pages += batch.size();
+		}
+
+		Path temporary = directory.resolve(MANIFEST + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			writer.write("seed " + seed);
+			writer.newLine();
+			writer.write("limit " + limit);
+			writer.newLine();
+			writer.write("segments " + segments);
+			writer.newLine();
+			for (Map.Entry<String, Integer> entry : unfinished.entrySet()) {
+				writer.write(entry.getValue() + " " + entry.getKey());
+				writer.newLine();
+			}
+		}
+		bytes += Files.size(temporary);
+		Files.move(temporary, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		checkpoints++;
+		nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * Read a checkpoint back: the words of every segment into the index, the
+	 * finished pages into the seen set, and the unfinished URLs into the queue
+	 *
+	 * @param manifest the manifest of the checkpoint
+	 * @param index    the index to add the finished pages to
+	 * @param seen     the set of URLs claimed by the crawl
+	 * @param queue    the list to add the unfinished URLs to
+	 * @throws IOException if unable to read the checkpoint
+	 */
+	private void restore(Path manifest, WritableIndexInterface index, SeenUrlSet seen,
+			ArrayList<Map.Entry<URL, Integer>> queue) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+			String saved = value(reader.readLine(), "seed");
+			if (!saved.equals(seed.toString())) {
+				System.out.println("Resuming the crawl from this seed URL: " + saved);
+			}
+			value(reader.readLine(), "limit");
+			segments = Integer.parseInt(value(reader.readLine(), "segments"));
+
+			for (int segment = 1; segment <= segments; segment++) {
+				index.addAll(read(IndexSnapshot.load(directory.resolve("segment-" + segment + ".bin"))));
+				for (String url : Files.readAllLines(directory.resolve("segment-" + segment + ".done"),
+						StandardCharsets.UTF_8)) {
+					seen.add(new URL(url));
+				}
+			}
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int space = line.indexOf(' ');
+				queue.add(Map.entry(new URL(line.substring(space + 1)), Integer.parseInt(line.substring(0, space))));
+			}
+		} catch (NumberFormatException | IndexOutOfBoundsException | MalformedURLException e) {
+			throw new IOException("Not a crawl checkpoint: " + manifest, e);
+		}
+	}
+
+	/**
+	 * Give the value of a line of the manifest header
+	 *
+	 * @param line the line
+	 * @param name the name the line starts with
+	 * @return the rest of the line
+	 * @throws IOException if the line does not start with the name
+	 */
+	private static String value(String line, String name) throws IOException {
+		if (line == null || !line.startsWith(name + " ")) {
+			throw new IOException("Missing " + name + " in the crawl checkpoint");
+		}
+		return line.substring(name.length() + 1);
+	}
+
+	/**
+	 * Copy a segment back into an index that can be added to another
+	 *
+	 * @param segment the segment
+	 * @return the words of the segment
+	 */
+	private static InvertedMap read(IndexSnapshot segment) {
+		InvertedMap words = new InvertedMap();
+		IndexCursor cursor = segment.cursor();
+		while (cursor.nextWord()) {
+			String word = cursor.word();
+			while (cursor.nextLocation()) {
+				String location = cursor.location();
+				PositionList positions = cursor.positions();
+				for (int i = 0; i < positions.size(); i++) {
+					words.add(word, location, positions.get(i));
+				}
+			}
+		}
+		return words;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CrawlCheckpoint: %d checkpoints of %d pages in %d segments, %d KiB written in %.1f ms, %d unfinished",
+				checkpoints, pages, segments, bytes / 1024, nanos / 1e6, unfinished.size());
+	}
+
+	/**
+	 * A page finished since the last checkpoint
+	 */
+	private static class Finished {
+
+		private final String url;
+		private final InvertedMap words;
+
+		/**
+		 * Initialize a finished page
+		 *
+		 * @param url   the page
+		 * @param words the words of the page, or null
+		 */
+		private Finished(String url, InvertedMap words) {
+			this.url = url;
+			this.words = words;
+		}
+	}
+}
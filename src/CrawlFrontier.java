@@ -0,0 +1,336 @@
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The URLs a crawl has found but not fetched yet. Each URL is claimed once in
+ * a {@link SeenUrlSet}, then waits in the queue of its host. A host is handed
+ * out to at most a few fetching threads at once, so one site is not flooded
+ * while pages of other hosts can be fetched in parallel.
+ *
+ * In breadth first order each host queue is first in first out and the host
+ * whose next URL is shallowest, then oldest, is served first. In priority
+ * order each host queue is sorted by a priority given to each URL and the
+ * host whose next URL has the highest priority is served first. A host is
+ * placed among the others when it becomes ready, so a URL found later with a
+ * higher priority moves its host ahead only once the host is served again.
+ *
+ * Claiming a link only locks a stripe of the seen set and its host queue. The
+ * single lock of the ready hosts is only taken when a host becomes ready or a
+ * URL is handed out.
+ */
+public class CrawlFrontier {
+
+	/** The order URLs are handed out in */
+	public enum Order {
+		/** Shallowest first, then in the order they were found */
+		BFS,
+		/** Highest priority first, then in the order they were found */
+		PRIORITY
+	}
+
+	/** The default number of URLs of one host fetched at once */
+	public static final int DEFAULT_PER_HOST = 4;
+
+	private final SeenUrlSet seen;
+	private final int limit;
+	private final int perHost;
+	private final Comparator<Entry> order;
+	private final ToDoubleFunction<URL> priority;
+	private final boolean fifo;
+
+	private final ConcurrentHashMap<String, Host> hosts;
+	private final AtomicLong sequence;
+	private final AtomicInteger queued;
+
+	private final ReentrantLock lock;
+	private final Condition available;
+	private final PriorityQueue<Host> ready;
+	private boolean closed;
+
+	/**
+	 * Initialize a breadth first frontier
+	 *
+	 * @param limit   the most URLs the crawl may claim
+	 * @param perHost the most URLs of one host handed out at once
+	 */
+	public CrawlFrontier(int limit, int perHost) {
+		this(new SeenUrlSet(), limit, perHost, Order.BFS, CrawlFrontier::shallowPaths);
+	}
+
+	/**
+	 * Initialize a frontier
+	 *
+	 * @param seen     the set of URLs already claimed
+	 * @param limit    the most URLs the seen set may hold
+	 * @param perHost  the most URLs of one host handed out at once
+	 * @param order    the order to hand out URLs in
+	 * @param priority the priority of a URL in priority order, higher first
+	 */
+	public CrawlFrontier(SeenUrlSet seen, int limit, int perHost, Order order, ToDoubleFunction<URL> priority) {
+		this.seen = seen;
+		this.limit = limit;
+		this.perHost = Math.max(perHost, 1);
+		this.priority = priority;
+		this.fifo = order == Order.BFS;
+		Comparator<Entry> first = fifo ? Comparator.comparingInt(entry -> entry.depth)
+				: Comparator.comparingDouble(entry -> -entry.priority);
+		this.order = first.thenComparingLong(entry -> entry.sequence);
+		this.hosts = new ConcurrentHashMap<>();
+		this.sequence = new AtomicLong();
+		this.queued = new AtomicInteger();
+		this.lock = new ReentrantLock();
+		this.available = lock.newCondition();
+		this.ready = new PriorityQueue<>((a, b) -> this.order.compare(a.next, b.next));
+		this.closed = false;
+	}
+
+	/**
+	 * The default priority, which prefers URLs with fewer path segments
+	 *
+	 * @param url the URL
+	 * @return minus the number of slashes in the path
+	 */
+	public static double shallowPaths(URL url) {
+		String path = url.getPath();
+		int slashes = 0;
+		for (int i = 0; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				slashes++;
+			}
+		}
+		return -slashes;
+	}
+
+	/**
+	 * Claim a URL and queue it to be fetched, unless it was claimed before or the
+	 * limit is reached
+	 *
+	 * @param url   the URL
+	 * @param depth the number of links followed from the seed to reach it
+	 * @return true if the URL was queued
+	 */
+	public boolean add(URL url, int depth) {
+		if (!seen.add(url, limit)) {
+			return false;
+		}
+		Entry entry = new Entry(url, depth, fifo ? 0 : priority.applyAsDouble(url), sequence.getAndIncrement());
+		Host host = hosts.computeIfAbsent(host(url),
+				name -> new Host(fifo ? new ArrayDeque<>() : new PriorityQueue<>(order)));
+		queued.incrementAndGet();
+		boolean schedule;
+		synchronized (host) {
+			host.queue.add(entry);
+			schedule = host.readyToSchedule();
+		}
+		if (schedule) {
+			schedule(host);
+		}
+		return true;
+	}
+
+	/**
+	 * Wait for the next URL to fetch. The URL must be given back with
+	 * {@link #done(Entry)} once fetched.
+	 *
+	 * @return the next URL, or null once the frontier is closed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Entry take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				if (closed) {
+					return null;
+				}
+				Host host = ready.poll();
+				if (host != null) {
+					synchronized (host) {
+						host.scheduled = false;
+						Entry entry = host.queue.poll();
+						host.active++;
+						if (host.readyToSchedule()) {
+							ready.add(host);
+							available.signal();
+						}
+						queued.decrementAndGet();
+						return entry;
+					}
+				}
+				available.await();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give back a URL that was fetched, letting the next URL of its host be
+	 * handed out
+	 *
+	 * @param entry the URL from {@link #take()}
+	 */
+	public void done(Entry entry) {
+		Host host = hosts.get(host(entry.url));
+		boolean schedule;
+		synchronized (host) {
+			host.active--;
+			schedule = host.readyToSchedule();
+		}
+		if (schedule) {
+			schedule(host);
+		}
+	}
+
+	/**
+	 * Wake every thread waiting for a URL and hand out no more
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Add a host that became ready to the ready hosts
+	 *
+	 * @param host the host, marked as scheduled
+	 */
+	private void schedule(Host host) {
+		lock.lock();
+		try {
+			ready.add(host);
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Give the number of URLs claimed
+	 *
+	 * @return the number of URLs
+	 */
+	public int claimed() {
+		return seen.size();
+	}
+
+	/**
+	 * Give the number of URLs waiting to be handed out
+	 *
+	 * @return the number of URLs
+	 */
+	public int queued() {
+		return queued.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CrawlFrontier: %d claimed, %d queued, %d hosts, %s order; %s", claimed(), queued(),
+				hosts.size(), fifo ? "breadth first" : "priority", seen);
+	}
+
+	/**
+	 * Give the key of the host of a URL
+	 *
+	 * @param url the URL
+	 * @return the host in lower case and its port
+	 */
+	private static String host(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+	}
+
+	/**
+	 * A URL waiting in the frontier
+	 */
+	public static class Entry {
+
+		private final URL url;
+		private final int depth;
+		private final double priority;
+		private final long sequence;
+
+		/**
+		 * Initialize an entry
+		 *
+		 * @param url      the URL
+		 * @param depth    the number of links followed from the seed
+		 * @param priority the priority in priority order
+		 * @param sequence the number of URLs queued before it
+		 */
+		private Entry(URL url, int depth, double priority, long sequence) {
+			this.url = url;
+			this.depth = depth;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Give the URL
+		 *
+		 * @return the URL
+		 */
+		public URL url() {
+			return url;
+		}
+
+		/**
+		 * Give the number of links followed from the seed to reach the URL
+		 *
+		 * @return the depth
+		 */
+		public int depth() {
+			return depth;
+		}
+	}
+
+	/**
+	 * The queue of one host, only used while holding its monitor. Its next URL is
+	 * kept while it waits among the ready hosts, so their order does not change.
+	 */
+	private class Host {
+
+		private final Queue<Entry> queue;
+		private int active;
+		private boolean scheduled;
+		private Entry next;
+
+		/**
+		 * Initialize an empty host
+		 *
+		 * @param queue the queue of its URLs
+		 */
+		private Host(Queue<Entry> queue) {
+			this.queue = queue;
+		}
+
+		/**
+		 * Check if the host has URLs and room for another fetch but is not among the
+		 * ready hosts, marking it as scheduled if so
+		 *
+		 * @return true if the host must be added to the ready hosts
+		 */
+		private boolean readyToSchedule() {
+			if (scheduled || queue.isEmpty() || active >= perHost) {
+				return false;
+			}
+			scheduled = true;
+			next = queue.peek();
+			return true;
+		}
+	}
+}
@@ -0,0 +1,676 @@
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Crawls as a pipeline of stages connected by bounded queues, each stage with
+ * its own threads: fetch the page, scan the HTML for its text and links, stem
+ * the text into a small index, add batches of those to the index, and claim
+ * the links and queue them to be fetched. Every URL is fetched once.
+ *
+ * A full queue makes the stage before it wait, so a slow stage shows up as a
+ * growing backlog in front of it instead of unbounded memory. The links wait
+ * to be fetched in a {@link CrawlFrontier}, which is not bounded, so the cycle
+ * from fetching back to fetching cannot deadlock, and which limits how many
+ * pages of one host are fetched at once. The number of pages each stage
+ * handled, how busy its threads were and its backlog are recorded.
+ *
+ * With a {@link CrawlCheckpoint} the state of the crawl is saved from time to
+ * time, and a crawl can continue from the last checkpoint instead of the seed.
+ * With a {@link ResponseCache} a page that did not change since an earlier
+ * crawl goes straight from the fetch stage to the index and link stages. With
+ * {@link NearDuplicates} the scan stage sends a page whose text is nearly the
+ * same as an earlier page's only to the link stage, so it is not indexed. A
+ * page reused from the cache is checked by its stored SimHash instead.
+ */
+public class CrawlPipeline implements CrawlerInterface {
+
+	/** The default number of threads fetching pages */
+	public static final int DEFAULT_FETCHERS = 8;
+
+	/** The default number of threads scanning HTML */
+	public static final int DEFAULT_SCANNERS = 1;
+
+	/** The default number of threads stemming text */
+	public static final int DEFAULT_STEMMERS = 2;
+
+	/** The default number of threads adding to the index */
+	public static final int DEFAULT_INDEXERS = 1;
+
+	/** The number of pages each queue holds */
+	public static final int QUEUE_SIZE = 256;
+
+	/** The most pages added to the index at once */
+	public static final int BATCH_PAGES = 32;
+
+	private final WritableIndexInterface map;
+	private final KeepAliveFetcher http;
+	private final int perHost;
+	private final CrawlFrontier.Order order;
+
+	private final Stage fetch;
+	private final Stage scan;
+	private final Stage stem;
+	private final Stage index;
+	private final Stage link;
+
+	/** The URLs of the current crawl waiting to be fetched */
+	private volatile CrawlFrontier frontier;
+
+	/** Saves the state of each crawl, or null */
+	private CrawlCheckpoint checkpoint;
+
+	/** Keeps what was extracted from each page for later crawls, or null */
+	private ResponseCache cache;
+
+	/** Finds the pages that are not indexed because of an earlier page, or null */
+	private NearDuplicates duplicates;
+
+	/** The pages of the current crawl that are not done yet, guarded by this */
+	private int outstanding;
+
+	/**
+	 * Initialize a pipeline with the default number of threads in each stage
+	 *
+	 * @param map the index to add the pages to
+	 */
+	public CrawlPipeline(WritableIndexInterface map) {
+		this(map, DEFAULT_FETCHERS, DEFAULT_SCANNERS, DEFAULT_STEMMERS, DEFAULT_INDEXERS);
+	}
+
+	/**
+	 * Initialize a pipeline
+	 *
+	 * @param map      the index to add the pages to
+	 * @param fetchers the number of threads fetching pages
+	 * @param scanners the number of threads scanning HTML
+	 * @param stemmers the number of threads stemming text
+	 * @param indexers the number of threads adding to the index
+	 */
+	public CrawlPipeline(WritableIndexInterface map, int fetchers, int scanners, int stemmers, int indexers) {
+		this(map, fetchers, scanners, stemmers, indexers, CrawlFrontier.DEFAULT_PER_HOST, CrawlFrontier.Order.BFS);
+	}
+
+	/**
+	 * Initialize a pipeline that fetches the URLs it finds in the given order
+	 *
+	 * @param map      the index to add the pages to
+	 * @param fetchers the number of threads fetching pages
+	 * @param scanners the number of threads scanning HTML
+	 * @param stemmers the number of threads stemming text
+	 * @param indexers the number of threads adding to the index
+	 * @param perHost  the most pages of one host fetched at once
+	 * @param order    the order to fetch the URLs found in
+	 */
+	public CrawlPipeline(WritableIndexInterface map, int fetchers, int scanners, int stemmers, int indexers,
+			int perHost, CrawlFrontier.Order order) {
+		this.map = map;
+		this.http = KeepAliveFetcher.shared();
+		this.perHost = perHost;
+		this.order = order;
+		this.fetch = new Stage("fetch", fetchers);
+		this.scan = new Stage("scan", scanners);
+		this.stem = new Stage("stem", stemmers);
+		this.index = new Stage("index", indexers);
+		this.link = new Stage("link", 1);
+		this.fetch.waiting = () -> frontier == null ? 0 : frontier.queued();
+	}
+
+	/**
+	 * Save the state of every later crawl with a checkpoint, continuing from it
+	 * if it resumes
+	 *
+	 * @param checkpoint the checkpoint, or null for none
+	 */
+	public void setCheckpoint(CrawlCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Fetch the pages of every later crawl through a cache, reusing the words and
+	 * links of the pages that did not change
+	 *
+	 * @param cache the cache, or null for none
+	 */
+	public void setCache(ResponseCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public void setDuplicates(NearDuplicates duplicates) {
+		this.duplicates = duplicates;
+	}
+
+	@Override
+	public void crawl(URL seed, int limit) {
+		SeenUrlSet seen = new SeenUrlSet();
+		frontier = new CrawlFrontier(seen, limit, perHost, order, CrawlFrontier::shallowPaths);
+		ArrayList<Map.Entry<URL, Integer>> start = new ArrayList<>();
+		if (checkpoint == null) {
+			start.add(Map.entry(seed, 0));
+		} else {
+			try {
+				start = checkpoint.start(seed, limit, map, seen);
+			} catch (IOException e) {
+				System.out.println("Unable to resume the crawl from this seed URL: " + seed);
+				return;
+			}
+		}
+
+		fetch.start(this::fetch);
+		scan.start(this::scan);
+		stem.start(this::stem);
+		index.start(this::index);
+		link.start(this::link);
+		try {
+			int rejected = 0;
+			synchronized (this) {
+				outstanding = start.size();
+			}
+			for (Map.Entry<URL, Integer> entry : start) {
+				if (!queue(entry.getKey(), entry.getValue())) {
+					rejected++;
+				}
+			}
+			synchronized (this) {
+				outstanding -= rejected;
+				while (outstanding > 0) {
+					wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Interrupted while crawling from this seed URL: " + seed);
+		} finally {
+			frontier.close();
+			for (Stage stage : stages()) {
+				stage.stop();
+			}
+			if (cache != null) {
+				try {
+					cache.save();
+				} catch (IOException e) {
+					System.out.println("Unable to save the response cache for this seed URL: " + seed);
+				}
+			}
+			if (checkpoint != null) {
+				try {
+					checkpoint.stop();
+				} catch (IOException e) {
+					System.out.println("Unable to checkpoint the crawl from this seed URL: " + seed);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		// the stage threads only run during a crawl
+	}
+
+	/**
+	 * Give the stages in pipeline order
+	 *
+	 * @return the stages
+	 */
+	private Stage[] stages() {
+		return new Stage[] { fetch, scan, stem, index, link };
+	}
+
+	/**
+	 * Fetch each page once, sending the HTML pages on to be scanned
+	 *
+	 * @param stage the fetch stage
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void fetch(Stage stage) throws InterruptedException {
+		CrawlFrontier frontier = this.frontier;
+		CrawlFrontier.Entry entry;
+		while ((entry = frontier.take()) != null) {
+			Page page = new Page(entry.url(), entry.depth());
+			long start = System.nanoTime();
+			try {
+				if (cache == null) {
+					page.html = HTMLFetcher.fetchHTML(page.url, 3, http);
+				} else {
+					page.fetched = cache.fetch(page.url, 3, http);
+					if (page.fetched != null && page.fetched.reused()) {
+						page.words = page.fetched.words(page.url.toString());
+						try {
+							page.links = page.fetched.links(page.url);
+						} catch (IOException e) {
+							page.links = new ArrayList<>();
+						}
+					} else if (page.fetched != null) {
+						page.html = page.fetched.html();
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				// a bad link, such as one with a port out of range, only loses its page
+				System.out.println("Unable to crawl from this seed URL: " + page.url);
+				page.html = null;
+				page.words = null;
+				page.links = null;
+			} finally {
+				frontier.done(entry);
+			}
+			stage.handled(start, 1);
+			if (page.words != null && page.links != null) {
+				boolean duplicate = duplicates != null && !duplicates.add(page.fetched.simHash());
+				page.fetched = null;
+				if (duplicate) {
+					page.words = null;
+					part(page);
+				} else {
+					index.queue.put(page);
+				}
+				link.queue.put(page);
+			} else if (page.html == null) {
+				page.words = null;
+				finish(page);
+			} else {
+				scan.queue.put(page);
+			}
+		}
+	}
+
+	/**
+	 * Find the text and links of each page, sending the text on to be stemmed and
+	 * the links on to be claimed
+	 *
+	 * @param stage the scan stage
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void scan(Stage stage) throws InterruptedException {
+		while (true) {
+			Page page = stage.queue.take();
+			long start = System.nanoTime();
+			boolean duplicate;
+			try {
+				HTMLScanner scanned = HTMLScanner.scan(page.html);
+				page.text = scanned.text();
+				try {
+					page.links = scanned.links(page.url);
+				} catch (IOException e) {
+					page.links = new ArrayList<>();
+				}
+				if (page.fetched != null) {
+					page.hrefs = scanned.hrefs();
+				}
+				if (duplicates != null || page.fetched != null) {
+					page.simHash = NearDuplicates.simHash(page.text);
+				}
+				duplicate = duplicates != null && !duplicates.add(page.simHash);
+			} catch (RuntimeException e) {
+				System.out.println("Unable to crawl from this seed URL: " + page.url);
+				page.html = null;
+				page.text = null;
+				page.links = null;
+				page.fetched = null;
+				stage.handled(start, 1);
+				finish(page);
+				continue;
+			}
+			page.html = null;
+			page.nanos += System.nanoTime() - start;
+			stage.handled(start, 1);
+			if (duplicate) {
+				page.text = null;
+				page.fetched = null;
+				part(page);
+			} else {
+				stem.queue.put(page);
+			}
+			link.queue.put(page);
+		}
+	}
+
+	/**
+	 * Stem the text of each page into its own small index
+	 *
+	 * @param stage the stem stage
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void stem(Stage stage) throws InterruptedException {
+		TextTokenizer tokenizer = new TextTokenizer();
+		while (true) {
+			Page page = stage.queue.take();
+			long start = System.nanoTime();
+			String location = page.url.toString();
+			InvertedMap words = new InvertedMap();
+			try {
+				tokenizer.tokenize(page.text, 1,
+						(word, position) -> words.add(StemCache.stemWord(word), location, position));
+				page.words = words;
+				if (page.fetched != null) {
+					cache.store(page.fetched, page.hrefs, words, page.simHash,
+							page.nanos + System.nanoTime() - start);
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to cache this URL: " + page.url);
+			} catch (RuntimeException e) {
+				System.out.println("Unable to crawl from this seed URL: " + page.url);
+				page.words = null;
+			}
+			page.text = null;
+			page.fetched = null;
+			page.hrefs = null;
+			stage.handled(start, 1);
+			if (page.words == null) {
+				// the links of the page are still claimed
+				part(page);
+			} else {
+				index.queue.put(page);
+			}
+		}
+	}
+
+	/**
+	 * Add the pages waiting to the index together, up to a batch at a time
+	 *
+	 * @param stage the index stage
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void index(Stage stage) throws InterruptedException {
+		ArrayList<Page> batch = new ArrayList<>(BATCH_PAGES);
+		while (true) {
+			batch.add(stage.queue.take());
+			stage.queue.drainTo(batch, BATCH_PAGES - 1);
+			long start = System.nanoTime();
+			try {
+				InvertedMap words = batch.get(0).words;
+				if (batch.size() > 1) {
+					// merged into a new index, so each page keeps its own words for the checkpoint
+					words = new InvertedMap();
+					for (Page page : batch) {
+						words.addAll(page.words);
+					}
+				}
+				map.addAll(words);
+			} catch (RuntimeException e) {
+				System.out.println("Unable to index this URL: " + batch.get(0).url);
+			} finally {
+				stage.handled(start, batch.size());
+				for (Page page : batch) {
+					if (checkpoint == null) {
+						page.words = null;
+					}
+					part(page);
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Claim the links of each page, queueing the new ones to be fetched
+	 *
+	 * @param stage the link stage
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void link(Stage stage) throws InterruptedException {
+		CrawlFrontier frontier = this.frontier;
+		while (true) {
+			Page page = stage.queue.take();
+			long start = System.nanoTime();
+			// count the links first, so the crawl cannot end while they are fetched
+			synchronized (this) {
+				outstanding += page.links.size();
+			}
+			int queued = 0;
+			try {
+				for (URL url : page.links) {
+					if (queue(url, page.depth + 1)) {
+						queued++;
+					}
+				}
+			} catch (RuntimeException e) {
+				System.out.println("Unable to crawl from this seed URL: " + page.url);
+			} finally {
+				stage.handled(start, 1);
+				synchronized (this) {
+					outstanding -= page.links.size() - queued;
+				}
+				page.links = null;
+				part(page);
+			}
+		}
+	}
+
+	/**
+	 * Claim a URL and queue it to be fetched, recording it in the checkpoint first
+	 * so it cannot be finished before it is recorded
+	 *
+	 * @param url   the URL
+	 * @param depth the number of links followed from the seed
+	 * @return true if the URL was queued
+	 */
+	private boolean queue(URL url, int depth) {
+		boolean recorded = checkpoint != null && checkpoint.claimed(url, depth);
+		if (frontier.add(url, depth)) {
+			return true;
+		}
+		if (recorded) {
+			checkpoint.rejected(url);
+		}
+		return false;
+	}
+
+	/**
+	 * Mark one of the two last stages of a page as done, finishing the page after
+	 * both
+	 *
+	 * @param page the page
+	 */
+	private void part(Page page) {
+		if (page.parts.decrementAndGet() == 0) {
+			finish(page);
+		}
+	}
+
+	/**
+	 * Finish a page whose words are in the index and whose links are claimed
+	 *
+	 * @param page the page
+	 */
+	private void finish(Page page) {
+		if (checkpoint != null) {
+			checkpoint.finished(page.url, page.words);
+			page.words = null;
+		}
+		done();
+	}
+
+	/**
+	 * Mark a page of the current crawl as done
+	 */
+	private synchronized void done() {
+		outstanding--;
+		if (outstanding == 0) {
+			notifyAll();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("CrawlPipeline:");
+		for (Stage stage : stages()) {
+			builder.append(System.lineSeparator()).append("  ").append(stage);
+		}
+		if (frontier != null) {
+			builder.append(System.lineSeparator()).append("  ").append(frontier);
+		}
+		if (checkpoint != null) {
+			builder.append(System.lineSeparator()).append("  ").append(checkpoint);
+		}
+		if (cache != null) {
+			builder.append(System.lineSeparator()).append("  ").append(cache);
+		}
+		if (duplicates != null) {
+			builder.append(System.lineSeparator()).append("  ").append(duplicates);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * A page moving through the pipeline. Each stage clears what the later stages
+	 * no longer need.
+	 */
+	private static class Page {
+
+		private final URL url;
+		private final int depth;
+		private String html;
+		private String text;
+		private ArrayList<URL> links;
+		private InvertedMap words;
+
+		/** The page as the cache fetched it and what it needs to store it, or null */
+		private ResponseCache.Fetched fetched;
+		private List<String> hrefs;
+		private long nanos;
+
+		/** The SimHash of the text, when there are near duplicates or a cache */
+		private long simHash;
+
+		/** The index and link stages left to handle the page */
+		private final AtomicInteger parts;
+
+		/**
+		 * Initialize a page that has not been fetched
+		 *
+		 * @param url   the page
+		 * @param depth the number of links followed from the seed
+		 */
+		private Page(URL url, int depth) {
+			this.url = url;
+			this.depth = depth;
+			this.parts = new AtomicInteger(2);
+		}
+	}
+
+	/**
+	 * The work of one stage, run on each of its threads until interrupted
+	 */
+	private interface Work {
+
+		/**
+		 * Handle the pages of the stage
+		 *
+		 * @param stage the stage
+		 * @throws InterruptedException when the stage is stopped
+		 */
+		public void run(Stage stage) throws InterruptedException;
+	}
+
+	/**
+	 * One stage of the pipeline: its input queue, its threads and how much it
+	 * handled
+	 */
+	private static class Stage {
+
+		private final String name;
+		private final int threads;
+		private final ArrayBlockingQueue<Page> queue;
+		private final ArrayList<Thread> workers;
+
+		private final LongAdder pages;
+		private final LongAdder busyNanos;
+		private final LongAdder backlog;
+		private final AtomicInteger peak;
+		private long runNanos;
+		private long started;
+
+		/** Gives the number of pages waiting for the stage */
+		private IntSupplier waiting;
+
+		/**
+		 * Initialize a stage
+		 *
+		 * @param name    the name of the stage
+		 * @param threads the number of threads of the stage
+		 */
+		private Stage(String name, int threads) {
+			this.name = name;
+			this.threads = Math.max(threads, 1);
+			this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+			this.workers = new ArrayList<>();
+			this.pages = new LongAdder();
+			this.busyNanos = new LongAdder();
+			this.backlog = new LongAdder();
+			this.peak = new AtomicInteger();
+			this.waiting = queue::size;
+		}
+
+		/**
+		 * Start the threads of the stage
+		 *
+		 * @param work the work each thread runs
+		 */
+		private void start(Work work) {
+			started = System.nanoTime();
+			for (int i = 1; i <= threads; i++) {
+				Thread thread = new Thread(() -> {
+					try {
+						work.run(this);
+					} catch (InterruptedException e) {
+						// the crawl is done
+					}
+				}, "crawl-" + name + "-" + i);
+				thread.setDaemon(true);
+				workers.add(thread);
+				thread.start();
+			}
+		}
+
+		/**
+		 * Stop the threads of the stage once the crawl is done and wait for them
+		 */
+		private void stop() {
+			for (Thread thread : workers) {
+				thread.interrupt();
+			}
+			for (Thread thread : workers) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			workers.clear();
+			queue.clear();
+			runNanos += System.nanoTime() - started;
+		}
+
+		/**
+		 * Record pages handled by the stage, and the backlog left behind them
+		 *
+		 * @param start when the stage started on the pages
+		 * @param count the number of pages
+		 */
+		private void handled(long start, int count) {
+			busyNanos.add(System.nanoTime() - start);
+			pages.add(count);
+			int backlog = waiting.getAsInt();
+			this.backlog.add((long) backlog * count);
+			peak.accumulateAndGet(backlog, Math::max);
+		}
+
+		@Override
+		public String toString() {
+			long run = runNanos + (workers.isEmpty() ? 0 : System.nanoTime() - started);
+			double seconds = run / 1e9;
+			long count = pages.sum();
+			return String.format("%s: %d threads, %d pages, %.1f pages/s, %.1f%% busy, backlog %d now, %.1f average, %d peak",
+					name, threads, count, seconds == 0 ? 0 : count / seconds,
+					run == 0 ? 0 : busyNanos.sum() * 100.0 / run / threads, waiting.getAsInt(),
+					count == 0 ? 0 : (double) backlog.sum() / count, peak.get());
+		}
+	}
+}
@@ -0,0 +1,30 @@
+import java.net.URL;
+
+/**
+ * Crawls web pages from a seed URL into an index.
+ */
+public interface CrawlerInterface {
+
+	/**
+	 * Crawl from a seed URL, returning once every page found has been indexed
+	 *
+	 * @param seed  the seed URL to crawl
+	 * @param limit the maximum amount of link
+	 */
+	public void crawl(URL seed, int limit);
+
+	/**
+	 * Leave the pages whose text is nearly the same as an earlier page's out of
+	 * the index, still following their links
+	 *
+	 * @param duplicates the near duplicates found so far, or null to index every
+	 *                   page
+	 */
+	public void setDuplicates(NearDuplicates duplicates);
+
+	/**
+	 * Release the threads and connections of the crawler once no more crawls will
+	 * be started
+	 */
+	public void shutdown();
+}
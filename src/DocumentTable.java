@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maps every location of an inverted index to a dense int ID, and keeps the
+ * total word count of each location in a primitive array indexed by that ID.
+ */
+public class DocumentTable {
+
+	private final HashMap<String, Integer> ids;
+	private final ArrayList<String> names;
+	private int[] lengths;
+	private volatile int[] ranks;
+
+	/**
+	 * Initialize an empty table
+	 */
+	public DocumentTable() {
+		this.ids = new HashMap<>();
+		this.names = new ArrayList<>();
+		this.lengths = new int[16];
+	}
+
+	/**
+	 * Give the ID of this location
+	 *
+	 * @param name the location to look up
+	 * @return the ID of the location, or -1 if it is not in the table
+	 */
+	public int id(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Give the ID of this location, adding it to the table if necessary
+	 *
+	 * @param name the location to look up or add
+	 * @return the ID of the location
+	 */
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		int next = names.size();
+		ids.put(name, next);
+		names.add(name);
+		ranks = null;
+		if (next == lengths.length) {
+			lengths = Arrays.copyOf(lengths, lengths.length * 2);
+		}
+		return next;
+	}
+
+	/**
+	 * Give the location with this ID
+	 *
+	 * @param id the ID of the location
+	 * @return the location
+	 */
+	public String name(int id) {
+		return names.get(id);
+	}
+
+	/**
+	 * Give the total words in the location with this ID
+	 *
+	 * @param id the ID of the location
+	 * @return the total words in this location
+	 */
+	public int length(int id) {
+		return lengths[id];
+	}
+
+	/**
+	 * Add to the total words in the location with this ID
+	 *
+	 * @param id    the ID of the location
+	 * @param count how many words to add
+	 */
+	public void increment(int id, int count) {
+		lengths[id] += count;
+	}
+
+	/**
+	 * Give the number of locations in the table
+	 *
+	 * @return the number of locations
+	 */
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * Give the rank of every location when the locations are sorted by name, so
+	 * that location IDs can be put in the same order a TreeMap would use. The
+	 * array is built once and kept until a new location is added.
+	 *
+	 * @return an array indexed by location ID with the sorted rank of each, must
+	 *         not be modified
+	 */
+	public int[] ranks() {
+		int[] cached = ranks;
+		if (cached != null) {
+			return cached;
+		}
+		Integer[] sorted = new Integer[names.size()];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, (a, b) -> names.get(a).compareTo(names.get(b)));
+		int[] ranks = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			ranks[sorted[i]] = i;
+		}
+		this.ranks = ranks;
+		return ranks;
+	}
+}
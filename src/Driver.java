@@ -3,6 +3,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Locale;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletHandler;
@@ -21,15 +22,17 @@ public class Driver {
 	public static void main(String[] args) {
 		QueryInterface queryParser;
 		ArgumentMap argument = new ArgumentMap(args);
-		InvertedMap index = null;
-		ThreadSafeInvertedMap safeIndex = null;
-		WorkQueue wq = null;
-		WebCrawler crawler = null;
+		IndexInterface searchIndex;
+		WritableIndexInterface index = null;
+		WritableIndexInterface safeIndex = null;
+		WorkExecutor wq = null;
+		CrawlerInterface crawler = null;
 
 		int threadNum = 0;
 		boolean haveThreads = argument.hasFlag("-threads");
 		boolean haveURL = argument.hasFlag("-url");
 		boolean havePort = argument.hasFlag("-port");
+		boolean stats = argument.hasFlag("-stats");
 
 		if (haveURL || havePort) {
 			haveThreads = true;
@@ -39,20 +42,64 @@ public class Driver {
 			port = Integer.parseInt(argument.getString("-port", "8080"));
 		}
 
+		if (argument.hasFlag("-stems")) {
+			try {
+				StemCache.shared().setMaxEntries(Integer.parseInt(argument.getString("-stems")));
+			} catch (NumberFormatException e) {
+				System.out.println("Unable to process this stem cache size: " + argument.getString("-stems"));
+			}
+		}
+
 		if (!haveThreads) {
 			index = new InvertedMap();
-			queryParser = new QueryFileParser(index);
 		} else {
 			threadNum = Integer.parseInt(argument.getString("-threads", "5"));
-			wq = new WorkQueue(threadNum);
-			safeIndex = new ThreadSafeInvertedMap();
+			wq = new WorkExecutor(threadNum);
+			if (argument.hasFlag("-concurrent")) {
+				safeIndex = new ConcurrentInvertedMap();
+			} else {
+				safeIndex = new ThreadSafeInvertedMap();
+			}
 			index = safeIndex;
-			queryParser = new MultiQueryFileParser(safeIndex, wq);
-			crawler = new WebCrawler(wq, safeIndex);
+			if (argument.hasFlag("-pipeline") || argument.hasFlag("-checkpoint") || argument.hasFlag("-resume")
+					|| argument.hasFlag("-responses")) {
+				CrawlPipeline pipeline = newPipeline(argument.getString("-pipeline"), argument.getString("-perhost"),
+						argument.getString("-order"), safeIndex);
+				// only the pipeline keeps the frontier that a checkpoint saves
+				if (argument.hasFlag("-checkpoint") || argument.hasFlag("-resume")) {
+					Path checkpoint = argument.getPath("-checkpoint", Paths.get("checkpoint"));
+					checkpoint = argument.getPath("-resume", checkpoint);
+					pipeline.setCheckpoint(new CrawlCheckpoint(checkpoint, CrawlCheckpoint.DEFAULT_INTERVAL_MILLIS,
+							argument.hasFlag("-resume")));
+				}
+				if (argument.hasFlag("-responses")) {
+					Path responses = argument.getPath("-responses", Paths.get("responses"));
+					try {
+						pipeline.setCache(ResponseCache.open(responses));
+					} catch (IOException e) {
+						System.out.println("Unable to open the response cache at path: " + responses);
+					}
+				}
+				crawler = pipeline;
+			} else if (argument.hasFlag("-virtual")) {
+				int fetches = WebCrawler.DEFAULT_FETCHES;
+				int perHost = WebCrawler.DEFAULT_PER_HOST;
+				try {
+					fetches = Integer.parseInt(argument.getString("-virtual", String.valueOf(fetches)));
+					perHost = Integer.parseInt(argument.getString("-perhost", String.valueOf(perHost)));
+				} catch (NumberFormatException e) {
+					System.out.println("Unable to process this fetch limit: " + argument.getString("-virtual"));
+				}
+				crawler = new WebCrawler(wq, safeIndex, fetches, perHost);
+			} else {
+				crawler = new WebCrawler(wq, safeIndex);
+			}
 		}
 
 		// Parallel with path
-		if (haveURL) {
+		if (argument.hasFlag("-load") && argument.hasValue("-load")) {
+			// nothing to build, the saved index is mapped below
+		} else if (haveURL) {
 			String seedURL = argument.getString("-url");
 			int limit = 0;
 			URL seed;
@@ -66,7 +113,32 @@ public class Driver {
 				System.out.println("Unable to process this limit: " + limit);
 				return;
 			}
+			NearDuplicates duplicates = null;
+			if (argument.hasFlag("-similar")) {
+				int threshold = NearDuplicates.DEFAULT_THRESHOLD;
+				try {
+					threshold = Integer.parseInt(argument.getString("-similar", String.valueOf(threshold)));
+				} catch (NumberFormatException e) {
+					System.out.println("Unable to process this similarity threshold: " + argument.getString("-similar"));
+				}
+				if (threshold < 0 || threshold > NearDuplicates.MAX_THRESHOLD) {
+					System.out.println("Unable to use this similarity threshold, the largest is "
+							+ NearDuplicates.MAX_THRESHOLD + ": " + threshold);
+				}
+				duplicates = new NearDuplicates(threshold);
+				crawler.setDuplicates(duplicates);
+			}
 			crawler.crawl(seed, limit);
+			crawler.shutdown();
+			if (stats) {
+				if (crawler instanceof CrawlPipeline) {
+					System.out.println(crawler);
+				} else if (duplicates != null) {
+					System.out.println(duplicates);
+				}
+				System.out.println(KeepAliveFetcher.shared());
+			}
+			KeepAliveFetcher.shared().closeIdle();
 		} else {
 			if (argument.hasFlag("-path") && argument.hasValue("-path")) {
 				Path inputPath = argument.getPath("-path");
@@ -74,7 +146,11 @@ public class Driver {
 					if (!haveThreads) {
 						InvertedIndexBuilder.buildFromPath(inputPath, index);
 					} else {
-						InvertedIndexThread.buildHelper(inputPath, safeIndex, wq);
+						if (argument.hasFlag("-reduce")) {
+							InvertedIndexThread.buildReduced(inputPath, safeIndex, wq);
+						} else {
+							InvertedIndexThread.buildHelper(inputPath, safeIndex, wq);
+						}
 					}
 				} catch (IOException e) {
 					System.out.println("Unable to build the index from path: " + inputPath);
@@ -82,13 +158,56 @@ public class Driver {
 				}
 			}
 		}
+
+		// The index is not changed after it is built, so search and write from an
+		// immutable snapshot that needs no locking
+		if (argument.hasFlag("-load") && argument.hasValue("-load")) {
+			Path loadPath = argument.getPath("-load");
+			try {
+				searchIndex = IndexSnapshot.load(loadPath);
+			} catch (IOException e) {
+				System.out.println("Unable to load the index from path: " + loadPath);
+				return;
+			}
+		} else {
+			IndexSnapshot snapshot = index.freeze();
+			if (argument.hasFlag("-save")) {
+				Path savePath = argument.getPath("-save", Paths.get("index.bin"));
+				try {
+					snapshot.save(savePath);
+				} catch (IOException e) {
+					System.out.println("Unable to save the index to path: " + savePath);
+				}
+			}
+			searchIndex = snapshot;
+		}
+		if (stats && safeIndex instanceof ThreadSafeInvertedMap) {
+			System.out.println(((ThreadSafeInvertedMap) safeIndex).lockStatistics());
+		}
+		index = null;
+		safeIndex = null;
+
+		int cacheSize = QueryCache.DEFAULT_RESULTS;
+		try {
+			cacheSize = Integer.parseInt(argument.getString("-cache", String.valueOf(QueryCache.DEFAULT_RESULTS)));
+		} catch (NumberFormatException e) {
+			System.out.println("Unable to process this cache size: " + argument.getString("-cache"));
+		}
+		QueryCache cache = new QueryCache(searchIndex, QueryCache.DEFAULT_ENTRIES, cacheSize);
+
+		if (!haveThreads) {
+			queryParser = new QueryFileParser(searchIndex, cache);
+		} else {
+			queryParser = new MultiQueryFileParser(searchIndex, wq, cache);
+		}
+
 		if (havePort) {
 			// Start the server
 
 			Server server = new Server(port);
 
 			ServletHandler handler = new ServletHandler();
-			handler.addServletWithMapping(new ServletHolder(new SearchServlet(queryParser)), "/");
+			handler.addServletWithMapping(new ServletHolder(new SearchServlet(queryParser, cache)), "/");
 			handler.addServletWithMapping(new ServletHolder(new CookieConfigServlet()), "/config");
 			server.setHandler(handler);
 			try {
@@ -104,7 +223,11 @@ public class Driver {
 			if (argument.hasFlag("-index")) {
 				Path outputPath = argument.getPath("-index", Paths.get("index.json"));
 				try {
-					index.write(outputPath);
+					if (wq != null) {
+						ParallelJSONWriter.asHighNestedObject(searchIndex, outputPath, wq);
+					} else {
+						searchIndex.write(outputPath);
+					}
 				} catch (IOException e) {
 					System.out.println("Unable to write the index to output path: " + outputPath);
 					return;
@@ -114,7 +237,7 @@ public class Driver {
 			if (argument.hasFlag("-locations")) {
 				Path outputPath = argument.getPath("-locations", Paths.get("location.json"));
 				try {
-					index.writeLocation(outputPath);
+					searchIndex.writeLocation(outputPath);
 				} catch (IOException e) {
 					System.out.println("Unable to write the locations to output path: " + outputPath);
 					return;
@@ -124,11 +247,17 @@ public class Driver {
 			if (argument.hasFlag("-search")) {
 				Path location = argument.getPath("-search");
 				boolean exact = argument.hasFlag("-exact");
+				int top = 0;
+				try {
+					top = Integer.parseInt(argument.getString("-top", "0"));
+				} catch (NumberFormatException e) {
+					System.out.println("Unable to process this number of results: " + argument.getString("-top"));
+				}
 				String check = location.toString().toLowerCase();
 				if (Files.exists(location)) {
 					if (check.endsWith(".txt") || check.endsWith(".text")) {
 						try {
-							queryParser.searchForQuery(location, exact);
+							queryParser.searchForQuery(location, exact, top);
 						} catch (IOException e) {
 							System.out.println("Unable to search from this query file: " + location);
 						}
@@ -146,10 +275,60 @@ public class Driver {
 				}
 			}
 
+			if (stats) {
+				System.out.println(cache);
+				System.out.println(StemCache.shared());
+			}
 			if (wq != null) {
+				if (stats) {
+					System.out.println(wq);
+				}
 				wq.shutdown();
 			}
 		}
 	}
 
+	/**
+	 * Create a crawl pipeline with the number of threads of each stage given as
+	 * "fetch,scan,stem,index", using the default for the stages not given
+	 *
+	 * @param threads the number of threads of each stage, or null
+	 * @param perHost the most pages of one host fetched at once, or null
+	 * @param order   "bfs" or "priority", the order to fetch the links in, or null
+	 * @param index   the index to add the pages to
+	 * @return the pipeline
+	 */
+	private static CrawlPipeline newPipeline(String threads, String perHost, String order,
+			WritableIndexInterface index) {
+		int[] counts = { CrawlPipeline.DEFAULT_FETCHERS, CrawlPipeline.DEFAULT_SCANNERS,
+				CrawlPipeline.DEFAULT_STEMMERS, CrawlPipeline.DEFAULT_INDEXERS };
+		if (threads != null) {
+			String[] split = threads.split(",");
+			try {
+				for (int i = 0; i < split.length && i < counts.length; i++) {
+					counts[i] = Integer.parseInt(split[i].trim());
+				}
+			} catch (NumberFormatException e) {
+				System.out.println("Unable to process these pipeline threads: " + threads);
+			}
+		}
+		int hostLimit = CrawlFrontier.DEFAULT_PER_HOST;
+		if (perHost != null) {
+			try {
+				hostLimit = Integer.parseInt(perHost);
+			} catch (NumberFormatException e) {
+				System.out.println("Unable to process this per host limit: " + perHost);
+			}
+		}
+		CrawlFrontier.Order fetchOrder = CrawlFrontier.Order.BFS;
+		if (order != null) {
+			try {
+				fetchOrder = CrawlFrontier.Order.valueOf(order.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Unable to process this crawl order: " + order);
+			}
+		}
+		return new CrawlPipeline(index, counts[0], counts[1], counts[2], counts[3], hostLimit, fetchOrder);
+	}
+
 }
@@ -117,6 +117,31 @@ public class HTMLFetcher {
 		return null;
 	}
 
+	/**
+	 * Fetches the html of a url with a keep-alive fetcher, following redirects
+	 * the same way as {@link #fetchHTML(URL, int)}. A relative redirect location is
+	 * resolved against the url that was fetched.
+	 *
+	 * @param url       the url to fetch and return as html
+	 * @param redirects the number of times to follow a redirect response
+	 * @param fetcher   the fetcher that keeps the connections
+	 * @return the html as a single String if the response code was ok, otherwise
+	 *         null
+	 * @throws IOException if unable to fetch the url
+	 */
+	public static String fetchHTML(URL url, int redirects, KeepAliveFetcher fetcher) throws IOException {
+		KeepAliveFetcher.Response response = fetcher.fetch(url);
+		int status = response.status();
+		if (response.isHTML() && status >= 200 && status < 300) {
+			return response.text();
+		}
+		String location = response.header("Location");
+		if (response.isRedirect() && redirects > 0 && location != null) {
+			return fetchHTML(new URL(url, location), redirects - 1, fetcher);
+		}
+		return null;
+	}
+
 	/**
 	 * @see #fetchHTML(URL, int)
 	 */
@@ -0,0 +1,382 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Scans HTML once to find both its text and its links. The text is exactly
+ * what {@link HTMLCleaner#stripHTML(String)} returns and the links exactly
+ * what {@link LinkParser#listLinks(URL, String)} returns, without the regular
+ * expression passes over the whole page or the copy without whitespace.
+ *
+ * The cleaner removes comments first, then head, style and script elements,
+ * then tags, then entities, each pass working on what the one before left. The
+ * scanner walks the page once with the same priorities: a comment or element
+ * starting at the current position is skipped with a single space, looking
+ * ahead only for where it ends, and the earlier passes are treated the same
+ * way while looking for that end. Tags are dropped as they are walked, and an
+ * entity is removed from the end of the text once its semicolon is seen. The
+ * links are found by a small state machine that sees every character once,
+ * ignoring whitespace like the link parser.
+ */
+public class HTMLScanner {
+
+	/** The elements removed with their content, in the order they are removed */
+	private static final String[] ELEMENTS = { "head", "style", "script" };
+
+	/** The kinds of region removed before tags, in the order they are removed */
+	private static final int COMMENT = 0;
+	private static final int SCRIPT = 3;
+
+	private final String html;
+	private final int length;
+	private final StringBuilder text;
+	private final ArrayList<String> hrefs;
+
+	/** Where a kind of region was found to have no end, so none after it has */
+	private final int[] unclosed;
+	private boolean unclosedTag;
+
+	/** The last region found of each kind, so a region is only looked ahead once */
+	private final int[] lastStart;
+	private final int[] lastEnd;
+
+	/** Where the entity being read starts in the text, or -1 */
+	private int entity;
+	private boolean entityDot;
+
+	/** The state of the link machine and the position it has read up to */
+	private int linkState;
+	private int linkMatched;
+	private final StringBuilder href;
+	private int linkPosition;
+
+	private static final int SEEK = 0;
+	private static final int OPEN = 1;
+	private static final int ANCHOR = 2;
+	private static final int VALUE = 3;
+	private static final String HREF = "href=\"";
+
+	/**
+	 * Initialize a scanner of a page
+	 *
+	 * @param html the HTML of the page
+	 */
+	private HTMLScanner(String html) {
+		this.html = html;
+		this.length = html.length();
+		this.text = new StringBuilder(length);
+		this.hrefs = new ArrayList<>();
+		this.unclosed = new int[] { length, length, length, length };
+		this.lastStart = new int[] { -1, -1, -1, -1 };
+		this.lastEnd = new int[4];
+		this.entity = -1;
+		this.href = new StringBuilder();
+	}
+
+	/**
+	 * Scan a page for its text and links
+	 *
+	 * @param html the HTML of the page
+	 * @return the scanned page
+	 */
+	public static HTMLScanner scan(String html) {
+		HTMLScanner scanner = new HTMLScanner(html);
+		scanner.scan();
+		return scanner;
+	}
+
+	/**
+	 * Give the text of the page, the same as {@link HTMLCleaner#stripHTML(String)}
+	 *
+	 * @return the text without any HTML, CSS, or JavaScript
+	 */
+	public String text() {
+		return text.toString();
+	}
+
+	/**
+	 * Give the links of the page as they are written, before they are resolved
+	 * against the URL of the page
+	 *
+	 * @return the href of each link, in the order they appear
+	 */
+	public List<String> hrefs() {
+		return Collections.unmodifiableList(hrefs);
+	}
+
+	/**
+	 * Give the links of the page, the same as
+	 * {@link LinkParser#listLinks(URL, String)}
+	 *
+	 * @param base the URL of the page
+	 * @return the cleaned links of the page, in the order they appear
+	 * @throws MalformedURLException if a link is not a valid URL
+	 */
+	public ArrayList<URL> links(URL base) throws MalformedURLException {
+		ArrayList<URL> links = new ArrayList<>(hrefs.size());
+		for (String site : hrefs) {
+			URL link = LinkParser.resolve(base, site);
+			if (link != null) {
+				links.add(link);
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Walk the page once, writing its text and reading its links
+	 */
+	private void scan() {
+		int position = 0;
+		int tag = -1;
+		while (true) {
+			readLinks(position);
+			if (position >= length) {
+				if (tag < 0) {
+					break;
+				}
+				// the tag never ends, so it and every later one is text
+				unclosedTag = true;
+				emit('<');
+				position = tag + 1;
+				tag = -1;
+				continue;
+			}
+			int end = region(position, SCRIPT + 1);
+			if (end >= 0) {
+				if (tag < 0) {
+					emit(' ');
+				}
+				position = end;
+				continue;
+			}
+			char c = html.charAt(position++);
+			if (tag >= 0) {
+				if (c == '>') {
+					tag = -1;
+				}
+			} else if (c == '<' && !unclosedTag) {
+				tag = position - 1;
+			} else {
+				emit(c);
+			}
+		}
+		readLinks(length);
+	}
+
+	/**
+	 * Find a comment or element that starts at a position and is removed before
+	 * the kinds after it
+	 *
+	 * @param position the position
+	 * @param kinds    the number of kinds to look for, in the order they are
+	 *                 removed
+	 * @return where the region ends, or -1 if none starts at the position
+	 */
+	private int region(int position, int kinds) {
+		if (position >= length || html.charAt(position) != '<') {
+			return -1;
+		}
+		for (int kind = COMMENT; kind < kinds; kind++) {
+			if (position >= unclosed[kind]) {
+				continue;
+			}
+			if (lastStart[kind] == position) {
+				return lastEnd[kind];
+			}
+			int end;
+			if (kind == COMMENT) {
+				if (!html.startsWith("<!--", position)) {
+					continue;
+				}
+				end = html.indexOf("-->", position + 4);
+				end = end < 0 ? -1 : end + 3;
+			} else {
+				String name = ELEMENTS[kind - 1];
+				if (!matches(position + 1, name)) {
+					continue;
+				}
+				end = close(kind, position + 1 + name.length());
+			}
+			if (end < 0) {
+				unclosed[kind] = position;
+				return -1;
+			}
+			lastStart[kind] = position;
+			lastEnd[kind] = end;
+			return end;
+		}
+		return -1;
+	}
+
+	/**
+	 * Find where an element ends: its name again followed by optional whitespace
+	 * and a closing bracket, skipping the regions removed before it as spaces
+	 *
+	 * @param kind the kind of element
+	 * @param from where to start looking
+	 * @return the position after the closing bracket, or -1 if the element never
+	 *         ends
+	 */
+	private int close(int kind, int from) {
+		String name = ELEMENTS[kind - 1];
+		int position = from;
+		while (position < length) {
+			int end = region(position, kind);
+			if (end >= 0) {
+				position = end;
+				continue;
+			}
+			if (matches(position, name)) {
+				int after = position + name.length();
+				while (after < length) {
+					if (isSpace(html.charAt(after))) {
+						after++;
+					} else if ((end = region(after, kind)) >= 0) {
+						after = end;
+					} else {
+						break;
+					}
+				}
+				if (after < length && html.charAt(after) == '>') {
+					return after + 1;
+				}
+			}
+			position++;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if a lower case name is at a position, ignoring ASCII case
+	 *
+	 * @param position the position
+	 * @param name     the name in lower case
+	 * @return true if the name is at the position
+	 */
+	private boolean matches(int position, String name) {
+		if (position + name.length() > length) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (lower(html.charAt(position + i)) != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add a character of text, removing an entity once it is complete
+	 *
+	 * @param c the character
+	 */
+	private void emit(char c) {
+		if (entity >= 0) {
+			int read = text.length() - entity;
+			if (!entityDot && isEntity(c)) {
+				text.append(c);
+				return;
+			}
+			if (c == '.' && !entityDot && read > 1) {
+				entityDot = true;
+				text.append(c);
+				return;
+			}
+			if (c == ';' && read > 1) {
+				text.setLength(entity);
+				entity = -1;
+				return;
+			}
+			entity = -1;
+		}
+		if (c == '&') {
+			entity = text.length();
+			entityDot = false;
+		}
+		text.append(c);
+	}
+
+	/**
+	 * Feed the link machine the page up to a position
+	 *
+	 * @param position the position to read up to
+	 */
+	private void readLinks(int position) {
+		while (linkPosition < position) {
+			char c = html.charAt(linkPosition++);
+			if (isSpace(c)) {
+				continue;
+			}
+			switch (linkState) {
+			case OPEN:
+				linkState = lower(c) == 'a' ? ANCHOR : c == '<' ? OPEN : SEEK;
+				linkMatched = 0;
+				break;
+			case ANCHOR:
+				if (c == '<') {
+					linkState = OPEN;
+				} else if (c == '>') {
+					linkState = SEEK;
+				} else if (lower(c) == HREF.charAt(linkMatched)) {
+					if (++linkMatched == HREF.length()) {
+						linkState = VALUE;
+						href.setLength(0);
+					}
+				} else {
+					linkMatched = lower(c) == 'h' ? 1 : 0;
+				}
+				break;
+			case VALUE:
+				if (c != '"') {
+					href.append(c);
+				} else if (href.length() == 0) {
+					// an empty link does not match, look for another in the same tag
+					linkState = ANCHOR;
+					linkMatched = 0;
+				} else {
+					hrefs.add(href.toString());
+					linkState = SEEK;
+				}
+				break;
+			default:
+				if (c == '<') {
+					linkState = OPEN;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if a character can be in the name of an entity
+	 *
+	 * @param c the character
+	 * @return true if the character is a letter, digit or one of |&lt;p&gt;{#}
+	 */
+	private static boolean isEntity(char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || "|<>{#}".indexOf(c) >= 0;
+	}
+
+	/**
+	 * Check if a character is whitespace the way regular expressions see it
+	 *
+	 * @param c the character
+	 * @return true if the character is a space, tab, line break or form feed
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	/**
+	 * Lower the case of an ASCII letter
+	 *
+	 * @param c the character
+	 * @return the lower case letter, or the character if it is not an ASCII
+	 *         letter
+	 */
+	private static char lower(char c) {
+		return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+	}
+}
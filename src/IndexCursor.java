@@ -0,0 +1,42 @@
+/**
+ * Walks the postings of an inverted index in sorted word order, and the
+ * locations of each word in sorted location order, without building a copy
+ * of the index.
+ */
+public interface IndexCursor {
+
+	/**
+	 * Move to the next word
+	 *
+	 * @return false if there are no more words
+	 */
+	public boolean nextWord();
+
+	/**
+	 * Give the current word
+	 *
+	 * @return the current word
+	 */
+	public String word();
+
+	/**
+	 * Move to the next location of the current word
+	 *
+	 * @return false if there are no more locations for this word
+	 */
+	public boolean nextLocation();
+
+	/**
+	 * Give the current location
+	 *
+	 * @return the current location
+	 */
+	public String location();
+
+	/**
+	 * Give the positions of the current word in the current location
+	 *
+	 * @return the positions, only valid until the cursor moves
+	 */
+	public PositionList positions();
+}
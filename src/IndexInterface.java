@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+
+public interface IndexInterface {
+
+	/**
+	 * Give the result of word count in specific location
+	 *
+	 * @param location the location to get
+	 * @return the total words in this location
+	 */
+	public int totalWord(String location);
+
+	/**
+	 * Check if the word is in the index
+	 *
+	 * @param word the word to check
+	 * @return true if it's in the index, else false
+	 */
+	public boolean contains(String word);
+
+	/**
+	 * Check if the word is in this location of the index
+	 *
+	 * @param word     the word to check
+	 * @param location the location to check
+	 * @return true if it's in the index, else false
+	 */
+	public boolean contains(String word, String location);
+
+	/**
+	 * Check if position of the word is in this location of the index
+	 *
+	 * @param word     the word to check
+	 * @param location the location to check
+	 * @param position the position to check
+	 * @return true if it's in the index, else false
+	 */
+	public boolean contains(String word, String location, int position);
+
+	/**
+	 * count the total word in this index
+	 *
+	 * @return count of the total word in this index
+	 */
+	public int words();
+
+	/**
+	 * count the location of this word in this index
+	 *
+	 * @param word the word to check
+	 * @return count of the location of this word in this index
+	 */
+	public int locations(String word);
+
+	/**
+	 * count the position of the location of this word in this index
+	 *
+	 * @param word     the word to check
+	 * @param location the location to check
+	 * @return count of position of the location of this word in this index
+	 */
+	public int positions(String word, String location);
+
+	/**
+	 * Do exact search to a line of query
+	 *
+	 * @param queryLine the stemmed words to search
+	 * @return An ArrayList of Result data structure
+	 */
+	public ArrayList<Result> exactSearch(Collection<String> queryLine);
+
+	/**
+	 * Do partial search to a line of query
+	 *
+	 * @param queryLine the stemmed words to search
+	 * @return An ArrayList of Result data structure
+	 */
+	public ArrayList<Result> partialSearch(Collection<String> queryLine);
+
+	/**
+	 * Do exact search to a line of query, keeping only the best results
+	 *
+	 * @param queryLine the stemmed words to search
+	 * @param limit     the maximum number of results, or 0 or less for all
+	 * @return An ArrayList of at most limit Result, best first
+	 */
+	public ArrayList<Result> exactSearch(Collection<String> queryLine, int limit);
+
+	/**
+	 * Do partial search to a line of query, keeping only the best results
+	 *
+	 * @param queryLine the stemmed words to search
+	 * @param limit     the maximum number of results, or 0 or less for all
+	 * @return An ArrayList of at most limit Result, best first
+	 */
+	public ArrayList<Result> partialSearch(Collection<String> queryLine, int limit);
+
+	/**
+	 * Give a number that changes every time the index changes, so cached search
+	 * results can tell when they are out of date
+	 *
+	 * @return the version of the index
+	 */
+	public long version();
+
+	/**
+	 * Give a cursor over every word, location and position of this index in
+	 * sorted order
+	 *
+	 * @return a cursor over this index
+	 */
+	public IndexCursor cursor();
+
+	/**
+	 * Give a cursor over the words from one sorted word number up to another, so
+	 * separate parts of the index can be walked at the same time
+	 *
+	 * @param from the number of the first word in sorted order, inclusive
+	 * @param to   the number of the last word in sorted order, exclusive
+	 * @return a cursor over this range of words
+	 */
+	public IndexCursor cursor(int from, int to);
+
+	/**
+	 * Write the index as pretty JSON for the "-index" function
+	 *
+	 * @param outputPath the output path of the index
+	 * @throws IOException if unable to write the file
+	 */
+	public void write(Path outputPath) throws IOException;
+
+	/**
+	 * Write the word count of every location as pretty JSON for the "-location"
+	 * function
+	 *
+	 * @param outputPath the output path of the result
+	 * @throws IOException if unable to write the file
+	 */
+	public void writeLocation(Path outputPath) throws IOException;
+}
@@ -0,0 +1,662 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, read-optimized copy of an inverted index. The whole index is
+ * kept in one {@link ByteBuffer}: words and locations are sorted arrays of
+ * UTF-8 strings, and the postings of every word are delta and varint encoded.
+ * Every read uses absolute gets only, so searches need no locking.
+ *
+ * Location IDs are the rank of the location name, so the postings of a word are
+ * already in the order the JSON output needs.
+ *
+ * <pre>
+ * header     MAGIC, VERSION, words, locations, and the offset of each table
+ * words      (words + 1) offsets into the word bytes, then the UTF-8 bytes
+ * postings   (words + 1) offsets into the posting bytes, then for every word:
+ *            per location: location gap, count, byte size, position gaps
+ * frequency  the number of locations of every word
+ * locations  (locations + 1) offsets into the location bytes, then the bytes
+ * lengths    the total words of every location
+ * trie       the {@link TermTrie} prefix index of the words
+ * bounds     the highest score of every word, as a double
+ * </pre>
+ */
+public class IndexSnapshot implements IndexInterface {
+
+	/** Identifies the layout of the buffer */
+	public static final int MAGIC = 0x494E4458;
+
+	/** The version of the layout */
+	public static final int VERSION = 3;
+
+	// header fields, in the order they are written
+	private static final int WORDS = 8;
+	private static final int LOCATIONS = 12;
+	private static final int WORD_TABLE = 16;
+	private static final int POSTING_TABLE = 20;
+	private static final int FREQUENCY_TABLE = 24;
+	private static final int LOCATION_TABLE = 28;
+	private static final int LENGTH_TABLE = 32;
+	private static final int TRIE_TABLE = 36;
+	private static final int BOUND_TABLE = 40;
+	private static final int HEADER = 44;
+
+	private final ByteBuffer buffer;
+	private final int words;
+	private final int locations;
+	private final int wordTable;
+	private final int postingTable;
+	private final int frequencyTable;
+	private final int locationTable;
+	private final int lengthTable;
+	private final TermTrie trie;
+	private final int boundTable;
+
+	/**
+	 * Open a snapshot over a buffer in the snapshot layout
+	 *
+	 * @param buffer the buffer holding the snapshot
+	 */
+	public IndexSnapshot(ByteBuffer buffer) {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IllegalArgumentException("Not an index snapshot");
+		}
+		this.buffer = buffer;
+		this.words = buffer.getInt(WORDS);
+		this.locations = buffer.getInt(LOCATIONS);
+		this.wordTable = buffer.getInt(WORD_TABLE);
+		this.postingTable = buffer.getInt(POSTING_TABLE);
+		this.frequencyTable = buffer.getInt(FREQUENCY_TABLE);
+		this.locationTable = buffer.getInt(LOCATION_TABLE);
+		this.lengthTable = buffer.getInt(LENGTH_TABLE);
+		this.trie = new TermTrie(buffer, buffer.getInt(TRIE_TABLE), this::word);
+		this.boundTable = buffer.getInt(BOUND_TABLE);
+	}
+
+	/**
+	 * Build a snapshot from a cursor over an index
+	 *
+	 * @param cursor  the cursor over the index to copy
+	 * @param lengths the total words of every location of the index
+	 * @return the snapshot
+	 */
+	public static IndexSnapshot build(IndexCursor cursor, TreeMap<String, Integer> lengths) {
+		HashMap<String, Integer> ids = new HashMap<>();
+		ByteArrayOutputStream locationBytes = new ByteArrayOutputStream();
+		int[] locationOffsets = new int[lengths.size() + 1];
+		for (String location : lengths.keySet()) {
+			locationOffsets[ids.size()] = locationBytes.size();
+			ids.put(location, ids.size());
+			locationBytes.writeBytes(location.getBytes(StandardCharsets.UTF_8));
+		}
+		locationOffsets[ids.size()] = locationBytes.size();
+		int[] lengthById = new int[ids.size()];
+		int next = 0;
+		for (int length : lengths.values()) {
+			lengthById[next++] = length;
+		}
+
+		ByteArrayOutputStream wordBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+		ArrayList<int[]> offsets = new ArrayList<>();
+		ArrayList<String> sorted = new ArrayList<>();
+		ArrayList<Double> bounds = new ArrayList<>();
+		while (cursor.nextWord()) {
+			int frequency = 0;
+			int previous = 0;
+			double bound = 0;
+			int wordOffset = wordBytes.size();
+			int postingOffset = postingBytes.size();
+			sorted.add(cursor.word());
+			wordBytes.writeBytes(cursor.word().getBytes(StandardCharsets.UTF_8));
+			while (cursor.nextLocation()) {
+				int location = ids.get(cursor.location());
+				PositionList positions = cursor.positions();
+				int size = 0;
+				int last = 0;
+				for (int i = 0; i < positions.size(); i++) {
+					size += VarInt.size(positions.get(i) - last);
+					last = positions.get(i);
+				}
+				VarInt.write(location - previous, postingBytes);
+				VarInt.write(positions.size(), postingBytes);
+				VarInt.write(size, postingBytes);
+				last = 0;
+				for (int i = 0; i < positions.size(); i++) {
+					VarInt.write(positions.get(i) - last, postingBytes);
+					last = positions.get(i);
+				}
+				previous = location;
+				frequency++;
+				bound = Math.max(bound, (double) positions.size() / lengthById[location]);
+			}
+			bounds.add(bound);
+			offsets.add(new int[] { wordOffset, postingOffset, frequency });
+		}
+
+		int words = offsets.size();
+		int wordTable = HEADER;
+		int wordStart = wordTable + 4 * (words + 1);
+		int postingTable = wordStart + wordBytes.size();
+		int postingStart = postingTable + 4 * (words + 1);
+		int frequencyTable = postingStart + postingBytes.size();
+		int locationTable = frequencyTable + 4 * words;
+		int locationStart = locationTable + 4 * locationOffsets.length;
+		int lengthTable = locationStart + locationBytes.size();
+		int trieTable = lengthTable + 4 * ids.size();
+		byte[] trie = TermTrie.build(sorted);
+		int boundTable = trieTable + trie.length;
+		int end = boundTable + 8 * words;
+
+		ByteBuffer buffer = ByteBuffer.allocate(end);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(words).putInt(ids.size());
+		buffer.putInt(wordTable).putInt(postingTable).putInt(frequencyTable).putInt(locationTable).putInt(lengthTable);
+		buffer.putInt(trieTable).putInt(boundTable);
+		for (int[] offset : offsets) {
+			buffer.putInt(wordStart + offset[0]);
+		}
+		buffer.putInt(wordStart + wordBytes.size());
+		buffer.put(wordBytes.toByteArray());
+		for (int[] offset : offsets) {
+			buffer.putInt(postingStart + offset[1]);
+		}
+		buffer.putInt(postingStart + postingBytes.size());
+		buffer.put(postingBytes.toByteArray());
+		for (int[] offset : offsets) {
+			buffer.putInt(offset[2]);
+		}
+		for (int offset : locationOffsets) {
+			buffer.putInt(locationStart + offset);
+		}
+		buffer.put(locationBytes.toByteArray());
+		for (int length : lengths.values()) {
+			buffer.putInt(length);
+		}
+		buffer.put(trie);
+		for (double bound : bounds) {
+			buffer.putDouble(bound);
+		}
+		return new IndexSnapshot(buffer);
+	}
+
+	/**
+	 * Save the snapshot as a binary index file that can be opened again with
+	 * {@link #load(Path)}
+	 *
+	 * @param path the file to write
+	 * @throws IOException if unable to write the file
+	 */
+	public void save(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer contents = buffer.duplicate();
+			contents.clear();
+			while (contents.hasRemaining()) {
+				channel.write(contents);
+			}
+		}
+	}
+
+	/**
+	 * Open a binary index file written by {@link #save(Path)}. The file is memory
+	 * mapped rather than read, so opening takes the same time for any size of
+	 * index and searches decode the postings straight from the mapped pages.
+	 *
+	 * @param path the file to open
+	 * @return the snapshot stored in the file
+	 * @throws IOException if unable to map the file or it is not an index file
+	 */
+	public static IndexSnapshot load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not an index file: " + path);
+			}
+			// the mapping stays valid after the channel is closed
+			ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			try {
+				return new IndexSnapshot(mapped);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Not an index file: " + path, e);
+			}
+		}
+	}
+
+	/**
+	 * Decode a UTF-8 string between two offsets
+	 *
+	 * @param start the offset of the first byte
+	 * @param end   the offset after the last byte
+	 * @return the string
+	 */
+	private String string(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Give the word with this ID
+	 *
+	 * @param id the ID of the word, which is its rank in sorted order
+	 * @return the word
+	 */
+	private String word(int id) {
+		int offset = wordTable + 4 * id;
+		return string(buffer.getInt(offset), buffer.getInt(offset + 4));
+	}
+
+	/**
+	 * Give the location with this ID
+	 *
+	 * @param id the ID of the location, which is its rank in sorted order
+	 * @return the location
+	 */
+	private String location(int id) {
+		int offset = locationTable + 4 * id;
+		return string(buffer.getInt(offset), buffer.getInt(offset + 4));
+	}
+
+	/**
+	 * Give the total words of the location with this ID
+	 *
+	 * @param id the ID of the location
+	 * @return the total words
+	 */
+	private int length(int id) {
+		return buffer.getInt(lengthTable + 4 * id);
+	}
+
+	/**
+	 * Give the number of locations of the word with this ID
+	 *
+	 * @param id the ID of the word
+	 * @return the number of locations
+	 */
+	private int frequency(int id) {
+		return buffer.getInt(frequencyTable + 4 * id);
+	}
+
+	/**
+	 * Give a reader at the start of the postings of the word with this ID
+	 *
+	 * @param id the ID of the word
+	 * @return a reader over its postings
+	 */
+	private VarInt.Reader postings(int id) {
+		return new VarInt.Reader(buffer, buffer.getInt(postingTable + 4 * id));
+	}
+
+	/**
+	 * Find the ID of this word
+	 *
+	 * @param word the word to look for
+	 * @return the ID, or -1 if the word is not in the snapshot
+	 */
+	private int findWord(String word) {
+		// the word itself is the first of the words it is a prefix of
+		int[] range = trie.range(word);
+		return range[0] < range[1] && word(range[0]).equals(word) ? range[0] : -1;
+	}
+
+	/**
+	 * Find the ID of this location
+	 *
+	 * @param location the location to look for
+	 * @return the ID, or -1 if the location is not in the snapshot
+	 */
+	private int findLocation(String location) {
+		int low = 0;
+		int high = locations - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compare = location(middle).compareTo(location);
+			if (compare < 0) {
+				low = middle + 1;
+			} else if (compare > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Move a reader to the postings of this location
+	 *
+	 * @param word     the ID of the word
+	 * @param location the ID of the location
+	 * @return the reader positioned on the count of the location, or null if the
+	 *         word is not in that location
+	 */
+	private VarInt.Reader seek(int word, int location) {
+		VarInt.Reader reader = postings(word);
+		int current = 0;
+		for (int i = frequency(word); i > 0; i--) {
+			current += reader.read();
+			if (current == location) {
+				return reader;
+			}
+			if (current > location) {
+				return null;
+			}
+			reader.read();
+			reader.skip(reader.read());
+		}
+		return null;
+	}
+
+	@Override
+	public int totalWord(String location) {
+		int id = findLocation(location);
+		return id < 0 ? 0 : length(id);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return findWord(word) >= 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location) {
+		return positions(word, location) > 0;
+	}
+
+	@Override
+	public boolean contains(String word, String location, int position) {
+		int term = findWord(word);
+		int document = findLocation(location);
+		// positions start at 1, so no smaller position is ever in the index
+		VarInt.Reader reader = position < 1 || term < 0 || document < 0 ? null : seek(term, document);
+		if (reader == null) {
+			return false;
+		}
+		int count = reader.read();
+		reader.read();
+		int current = 0;
+		for (int i = 0; i < count && current < position; i++) {
+			current += reader.read();
+		}
+		return current == position;
+	}
+
+	@Override
+	public int words() {
+		return words;
+	}
+
+	@Override
+	public int locations(String word) {
+		int id = findWord(word);
+		return id < 0 ? 0 : frequency(id);
+	}
+
+	@Override
+	public int positions(String word, String location) {
+		int term = findWord(word);
+		int document = findLocation(location);
+		VarInt.Reader reader = term < 0 || document < 0 ? null : seek(term, document);
+		return reader == null ? 0 : reader.read();
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryLine) {
+		return exactSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryLine, int limit) {
+		if (limit > 0) {
+			ArrayList<PostingIterator> iterators = new ArrayList<>();
+			for (String word : queryLine) {
+				int id = findWord(word);
+				if (id >= 0) {
+					iterators.add(new Iterator(id));
+				}
+			}
+			return MaxScoreSearch.search(iterators, limit, this::location, this::length);
+		}
+		ArrayList<Result> results = new ArrayList<>();
+		Result[] found = new Result[locations];
+		for (String word : queryLine) {
+			int id = findWord(word);
+			if (id >= 0) {
+				searchWork(found, id, results);
+			}
+		}
+		return ResultHeap.top(results, limit);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryLine) {
+		return partialSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryLine, int limit) {
+		if (limit > 0) {
+			ArrayList<PostingIterator> iterators = new ArrayList<>();
+			for (String word : queryLine) {
+				int[] range = trie.range(word);
+				for (int id = range[0]; id < range[1]; id++) {
+					iterators.add(new Iterator(id));
+				}
+			}
+			return MaxScoreSearch.search(iterators, limit, this::location, this::length);
+		}
+		ArrayList<Result> results = new ArrayList<>();
+		Result[] found = new Result[locations];
+		for (String word : queryLine) {
+			int[] range = trie.range(word);
+			for (int id = range[0]; id < range[1]; id++) {
+				searchWork(found, id, results);
+			}
+		}
+		return ResultHeap.top(results, limit);
+	}
+
+	/**
+	 * The helper method that do the search. Only the count of each location is
+	 * read; the positions are skipped without being decoded.
+	 *
+	 * @param found the Result of every location found so far, indexed by location
+	 *              ID
+	 * @param word  the ID of the single search query
+	 * @param list  the arrayList that stores Result
+	 */
+	private void searchWork(Result[] found, int word, ArrayList<Result> list) {
+		VarInt.Reader reader = postings(word);
+		int location = 0;
+		for (int i = frequency(word); i > 0; i--) {
+			location += reader.read();
+			int totalMatched = reader.read();
+			reader.skip(reader.read());
+			if (found[location] != null) {
+				found[location].setMatch(totalMatched);
+			} else {
+				Result r = new Result(location(location), totalMatched, length(location));
+				list.add(r);
+				found[location] = r;
+			}
+		}
+	}
+
+	@Override
+	public long version() {
+		// a snapshot never changes
+		return 0;
+	}
+
+	@Override
+	public IndexCursor cursor() {
+		return new Cursor(0, words);
+	}
+
+	@Override
+	public IndexCursor cursor(int from, int to) {
+		return new Cursor(from, Math.min(to, words));
+	}
+
+	@Override
+	public void write(Path outputPath) throws IOException {
+		TreeJSONWriter.asHighNestedObject(cursor(), outputPath);
+	}
+
+	@Override
+	public void writeLocation(Path outputPath) throws IOException {
+		TreeMap<String, Integer> wordTotal = new TreeMap<>();
+		for (int i = 0; i < locations; i++) {
+			wordTotal.put(location(i), length(i));
+		}
+		try (var writer = TreeJSONWriter.newWriter(outputPath)) {
+			TreeJSONWriter.asObject(wordTotal, writer, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "IndexSnapshot: " + words + " words, " + locations + " locations, " + buffer.capacity() + " bytes";
+	}
+
+	/**
+	 * Walks the postings of one word, skipping over the positions
+	 */
+	private class Iterator implements PostingIterator {
+
+		private final VarInt.Reader reader;
+		private final double maxScore;
+		private int remaining;
+		private int location;
+		private int count;
+
+		/**
+		 * Initialize the iterator on the first location of a word
+		 *
+		 * @param word the ID of the word
+		 */
+		public Iterator(int word) {
+			this.reader = postings(word);
+			this.maxScore = buffer.getDouble(boundTable + 8 * word);
+			this.remaining = frequency(word);
+			this.location = 0;
+			next();
+		}
+
+		@Override
+		public int location() {
+			return location;
+		}
+
+		@Override
+		public int count() {
+			return count;
+		}
+
+		@Override
+		public int next() {
+			if (remaining == 0) {
+				location = NO_MORE;
+				return location;
+			}
+			remaining--;
+			location += reader.read();
+			count = reader.read();
+			reader.skip(reader.read());
+			return location;
+		}
+
+		@Override
+		public int advance(int target) {
+			while (location < target) {
+				next();
+			}
+			return location;
+		}
+
+		@Override
+		public double maxScore() {
+			return maxScore;
+		}
+	}
+
+	/**
+	 * Walks the snapshot in order, decoding the positions of each location into
+	 * one reused list
+	 */
+	private class Cursor implements IndexCursor {
+
+		private final PositionList positions;
+		private final int end;
+		private VarInt.Reader reader;
+		private int word;
+		private int remaining;
+		private int location;
+
+		/**
+		 * Initialize the cursor before the first word of the range
+		 *
+		 * @param from the number of the first word, inclusive
+		 * @param to   the number of the last word, exclusive
+		 */
+		public Cursor(int from, int to) {
+			this.positions = new PositionList();
+			this.end = to;
+			this.word = from - 1;
+		}
+
+		@Override
+		public boolean nextWord() {
+			if (word + 1 >= end) {
+				return false;
+			}
+			word++;
+			reader = postings(word);
+			remaining = frequency(word);
+			location = 0;
+			return true;
+		}
+
+		@Override
+		public String word() {
+			return IndexSnapshot.this.word(word);
+		}
+
+		@Override
+		public boolean nextLocation() {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			location += reader.read();
+			int count = reader.read();
+			reader.read();
+			positions.clear();
+			int position = 0;
+			for (int i = 0; i < count; i++) {
+				position += reader.read();
+				positions.add(position);
+			}
+			return true;
+		}
+
+		@Override
+		public String location() {
+			return IndexSnapshot.this.location(location);
+		}
+
+		@Override
+		public PositionList positions() {
+			return positions;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A multi-reader single-writer lock that prefers writers. New readers wait
+ * while a writer is waiting, so a steady stream of readers cannot starve a
+ * writer; a thread that already holds the read lock may still take it again.
+ * Waiting threads are woken with conditions instead of waking every thread on
+ * every unlock.
+ *
+ * Short reads may instead be tried optimistically without locking, in the
+ * style of {@link java.util.concurrent.locks.StampedLock}: take a stamp with
+ * {@link #tryOptimisticRead()}, read, then keep the result only if
+ * {@link #validate(long)} says no writer ran in between. The read must be safe
+ * to run against data a writer is changing, and must not be trusted before it
+ * is validated.
+ *
+ * The time spent waiting for and holding each mode is recorded so contention
+ * can be seen while the lock is in use.
+ */
+public class InstrumentedReadWriteLock {
+
+	private final ReentrantLock mutex;
+	private final Condition readable;
+	private final Condition writable;
+
+	/** Guarded by the mutex */
+	private int readers;
+	private boolean writer;
+	private int waitingWriters;
+	private long writeStart;
+
+	/** Even while no writer holds the lock, odd while one does */
+	private volatile long sequence;
+
+	/** The read lock depth and outermost lock time of each thread */
+	private final ThreadLocal<long[]> held;
+
+	private final LongAdder reads;
+	private final LongAdder readWait;
+	private final LongAdder readHold;
+	private final LongAdder writes;
+	private final LongAdder writeWait;
+	private final LongAdder writeHold;
+	private final LongAdder optimistic;
+	private final LongAdder optimisticFailed;
+
+	/**
+	 * Initializes a multi-reader single-writer lock.
+	 */
+	public InstrumentedReadWriteLock() {
+		this.mutex = new ReentrantLock();
+		this.readable = mutex.newCondition();
+		this.writable = mutex.newCondition();
+		this.readers = 0;
+		this.writer = false;
+		this.waitingWriters = 0;
+		this.sequence = 0;
+		this.held = ThreadLocal.withInitial(() -> new long[2]);
+		this.reads = new LongAdder();
+		this.readWait = new LongAdder();
+		this.readHold = new LongAdder();
+		this.writes = new LongAdder();
+		this.writeWait = new LongAdder();
+		this.writeHold = new LongAdder();
+		this.optimistic = new LongAdder();
+		this.optimisticFailed = new LongAdder();
+	}
+
+	/**
+	 * Check if a new reader has to wait. Must hold the mutex.
+	 *
+	 * @param depth the read lock depth of the calling thread
+	 * @return true if a writer holds the lock, or one is waiting and the calling
+	 *         thread does not already hold the read lock
+	 */
+	private boolean readBlocked(long depth) {
+		return writer || (waitingWriters > 0 && depth == 0);
+	}
+
+	/**
+	 * Will wait until there are no active or waiting writers, and then will
+	 * increase the number of active readers. An interrupt does not stop the wait,
+	 * but stays set on the thread.
+	 */
+	public void lockReadOnly() {
+		long start = System.nanoTime();
+		long[] state = held.get();
+		mutex.lock();
+		try {
+			while (readBlocked(state[0])) {
+				readable.awaitUninterruptibly();
+			}
+			readers++;
+		} finally {
+			mutex.unlock();
+		}
+		acquiredRead(state, start);
+	}
+
+	/**
+	 * Will wait until there are no active or waiting writers, and then will
+	 * increase the number of active readers.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void lockReadOnlyInterruptibly() throws InterruptedException {
+		long start = System.nanoTime();
+		long[] state = held.get();
+		mutex.lockInterruptibly();
+		try {
+			while (readBlocked(state[0])) {
+				readable.await();
+			}
+			readers++;
+		} finally {
+			mutex.unlock();
+		}
+		acquiredRead(state, start);
+	}
+
+	/**
+	 * Record a read lock acquisition
+	 *
+	 * @param state the read lock depth and lock time of this thread
+	 * @param start when the thread started waiting
+	 */
+	private void acquiredRead(long[] state, long start) {
+		long now = System.nanoTime();
+		reads.increment();
+		readWait.add(now - start);
+		if (state[0]++ == 0) {
+			state[1] = now;
+		}
+	}
+
+	/**
+	 * Will decrease the number of active readers, and wake a waiting writer if
+	 * this was the last reader.
+	 */
+	public void unlockReadOnly() {
+		long[] state = held.get();
+		if (--state[0] == 0) {
+			readHold.add(System.nanoTime() - state[1]);
+		}
+		mutex.lock();
+		try {
+			readers--;
+			if (readers == 0 && waitingWriters > 0) {
+				writable.signal();
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Will wait until there are no active readers or writers, and then will take
+	 * the write lock. An interrupt does not stop the wait, but stays set on the
+	 * thread.
+	 */
+	public void lockReadWrite() {
+		long start = System.nanoTime();
+		mutex.lock();
+		try {
+			waitingWriters++;
+			while (readers > 0 || writer) {
+				writable.awaitUninterruptibly();
+			}
+			waitingWriters--;
+			acquiredWrite(start);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Will wait until there are no active readers or writers, and then will take
+	 * the write lock.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void lockReadWriteInterruptibly() throws InterruptedException {
+		long start = System.nanoTime();
+		mutex.lockInterruptibly();
+		try {
+			waitingWriters++;
+			try {
+				while (readers > 0 || writer) {
+					writable.await();
+				}
+			} catch (InterruptedException e) {
+				waitingWriters--;
+				// pass on a signal this thread may have taken, or let readers in
+				if (waitingWriters == 0) {
+					readable.signalAll();
+				} else if (readers == 0 && !writer) {
+					writable.signal();
+				}
+				throw e;
+			}
+			waitingWriters--;
+			acquiredWrite(start);
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Take the write lock and record it. Must hold the mutex.
+	 *
+	 * @param start when the thread started waiting
+	 */
+	private void acquiredWrite(long start) {
+		writer = true;
+		sequence++;
+		writeStart = System.nanoTime();
+		writes.increment();
+		writeWait.add(writeStart - start);
+	}
+
+	/**
+	 * Will release the write lock and wake the next writer, or every waiting
+	 * reader if no writer is waiting.
+	 */
+	public void unlockReadWrite() {
+		mutex.lock();
+		try {
+			writeHold.add(System.nanoTime() - writeStart);
+			writer = false;
+			sequence++;
+			if (waitingWriters > 0) {
+				writable.signal();
+			} else {
+				readable.signalAll();
+			}
+		} finally {
+			mutex.unlock();
+		}
+	}
+
+	/**
+	 * Give a stamp for an optimistic read, without locking
+	 *
+	 * @return the stamp to validate after reading, or 0 if a writer holds the
+	 *         lock
+	 */
+	public long tryOptimisticRead() {
+		optimistic.increment();
+		long stamp = sequence;
+		if ((stamp & 1) != 0) {
+			optimisticFailed.increment();
+			return 0;
+		}
+		// offset the stamp so 0 is left to mean no stamp
+		return stamp + 2;
+	}
+
+	/**
+	 * Check that no writer took the lock since the stamp was given
+	 *
+	 * @param stamp the stamp from {@link #tryOptimisticRead()}
+	 * @return true if the reads since the stamp can be trusted
+	 */
+	public boolean validate(long stamp) {
+		VarHandle.acquireFence();
+		boolean valid = stamp != 0 && sequence == stamp - 2;
+		if (!valid && stamp != 0) {
+			optimisticFailed.increment();
+		}
+		return valid;
+	}
+
+	/**
+	 * Give the number of times the read lock was taken
+	 *
+	 * @return the number of read locks
+	 */
+	public long reads() {
+		return reads.sum();
+	}
+
+	/**
+	 * Give the total time spent waiting for the read lock
+	 *
+	 * @return the wait time in nanoseconds
+	 */
+	public long readWaitNanos() {
+		return readWait.sum();
+	}
+
+	/**
+	 * Give the total time the read lock was held, counting each thread once for
+	 * nested locks
+	 *
+	 * @return the hold time in nanoseconds
+	 */
+	public long readHoldNanos() {
+		return readHold.sum();
+	}
+
+	/**
+	 * Give the number of times the write lock was taken
+	 *
+	 * @return the number of write locks
+	 */
+	public long writes() {
+		return writes.sum();
+	}
+
+	/**
+	 * Give the total time spent waiting for the write lock
+	 *
+	 * @return the wait time in nanoseconds
+	 */
+	public long writeWaitNanos() {
+		return writeWait.sum();
+	}
+
+	/**
+	 * Give the total time the write lock was held
+	 *
+	 * @return the hold time in nanoseconds
+	 */
+	public long writeHoldNanos() {
+		return writeHold.sum();
+	}
+
+	/**
+	 * Give the fraction of optimistic reads that had to fall back to the lock
+	 *
+	 * @return the failure rate between 0 and 1
+	 */
+	public double optimisticFailureRate() {
+		long total = optimistic.sum();
+		return total == 0 ? 0 : (double) optimisticFailed.sum() / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"ReadWriteLock: %d reads (%.3f ms waiting, %.3f ms held), %d writes (%.3f ms waiting, %.3f ms held), "
+						+ "%d optimistic reads, %.1f%% failed",
+				reads(), readWaitNanos() / 1e6, readHoldNanos() / 1e6, writes(), writeWaitNanos() / 1e6,
+				writeHoldNanos() / 1e6, optimistic.sum(), optimisticFailureRate() * 100);
+	}
+}
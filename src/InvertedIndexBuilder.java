@@ -6,8 +6,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
-
 public class InvertedIndexBuilder {
 
 	/**
@@ -18,7 +16,7 @@ public class InvertedIndexBuilder {
 	 * @param dirPath the path passed in to be verified
 	 * @param map     the data structure InvertedMap
 	 */
-	public static void buildFromPath(Path dirPath, InvertedMap map) throws IOException {
+	public static void buildFromPath(Path dirPath, WritableIndexInterface map) throws IOException {
 		if (Files.exists(dirPath)) {
 			if (Files.isDirectory(dirPath)) {
 				try (DirectoryStream<Path> listing = Files.newDirectoryStream(dirPath)) {
@@ -46,18 +44,15 @@ public class InvertedIndexBuilder {
 	 * @param file file to read and process
 	 * @param map  the data structure InvertedMap
 	 */
-	public static void buildFromFile(Path file, InvertedMap map) throws IOException {
+	public static void buildFromFile(Path file, WritableIndexInterface map) throws IOException {
 		String name = file.toString();
-		SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-		int count = 0;
+		TextTokenizer tokenizer = new TextTokenizer();
+		int count = 1;
 		try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);) {
 			String line;
 			while ((line = reader.readLine()) != null) {
-				String splitList[] = TextParser.parse(line.toLowerCase());
-				for (String stem : splitList) {
-					String words = TextFileStemmer.stemWord(stem, stemmer);
-					map.add(words, name, ++count);
-				}
+				count = tokenizer.tokenize(line, count,
+						(word, position) -> map.add(StemCache.stemWord(word), name, position));
 			}
 		}
 	}
@@ -1,8 +1,14 @@
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class InvertedIndexThread {
 
@@ -11,12 +17,104 @@ public class InvertedIndexThread {
 	 *
 	 * @param dirPath the path passed in to be verified
 	 * @param map     the data structure InvertedMap
-	 * @param wq      the workqueue pass in for multithreading
+	 * @param wq      the executor pass in for multithreading
 	 * @throws IOException
 	 */
-	public static void buildHelper(Path dirPath, ThreadSafeInvertedMap map, WorkQueue wq) throws IOException {
-		buildFromPath(dirPath, map, wq);
-		wq.finish();
+	public static void buildHelper(Path dirPath, WritableIndexInterface map, WorkExecutor wq) throws IOException {
+		WorkExecutor.TaskGroup group = wq.group();
+		buildFromPath(dirPath, map, group);
+		finish(group);
+	}
+
+	/**
+	 * Waits for a group of build tasks
+	 *
+	 * @param group the group to wait for
+	 * @throws IOException if interrupted while waiting or a build task failed
+	 */
+	private static void finish(WorkExecutor.TaskGroup group) throws IOException {
+		try {
+			group.finish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while building the index");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to build the index", e.getCause());
+		}
+	}
+
+	/**
+	 * Builds the index without locking the shared index for every file. Each
+	 * worker takes files from a shared list and adds them to its own local index.
+	 * The words are then split into ranges of about the same size, and the local
+	 * indexes are merged range by range on the fork-join pool, so no two merges
+	 * touch the same word. The merged ranges are added to the shared index by
+	 * this thread alone, so the workers never queue on its lock.
+	 *
+	 * @param dirPath the path passed in to be verified
+	 * @param map     the data structure InvertedMap
+	 * @param wq      the executor pass in for multithreading
+	 * @throws IOException
+	 */
+	public static void buildReduced(Path dirPath, WritableIndexInterface map, WorkExecutor wq) throws IOException {
+		ArrayList<Path> files = new ArrayList<>();
+		listFiles(dirPath, files);
+		if (files.isEmpty()) {
+			return;
+		}
+
+		int workers = Math.min(wq.size(), files.size());
+		AtomicInteger next = new AtomicInteger();
+		ArrayList<InvertedMap> partials = new ArrayList<>();
+		WorkExecutor.TaskGroup group = wq.group();
+		for (int i = 0; i < workers; i++) {
+			InvertedMap local = new InvertedMap();
+			partials.add(local);
+			group.execute(new LocalBuildTask(files, next, local));
+		}
+		finish(group);
+
+		// split by the words of the largest local index, which sees the most words
+		InvertedMap largest = partials.get(0);
+		for (InvertedMap partial : partials) {
+			if (partial.words() > largest.words()) {
+				largest = partial;
+			}
+		}
+		ArrayList<String> bounds = new ArrayList<>();
+		bounds.add(null);
+		bounds.addAll(largest.splitWords(wq.size()));
+		bounds.add(null);
+
+		InvertedMap[] ranges = new InvertedMap[bounds.size() - 1];
+		wq.invoke(new MergeTask(partials, bounds, ranges, 0, ranges.length));
+		for (InvertedMap range : ranges) {
+			map.addAll(range);
+		}
+	}
+
+	/**
+	 * Adds every text file under the path to the list
+	 *
+	 * @param dirPath the path passed in to be verified
+	 * @param files   the list of text files found so far
+	 * @throws IOException
+	 */
+	private static void listFiles(Path dirPath, List<Path> files) throws IOException {
+		if (Files.exists(dirPath)) {
+			if (Files.isDirectory(dirPath)) {
+				try (DirectoryStream<Path> listing = Files.newDirectoryStream(dirPath)) {
+					for (Path file : listing) {
+						listFiles(file, files);
+					}
+				}
+			} else {
+				String check = dirPath.toString().toLowerCase();
+				if (check.endsWith(".txt") || check.endsWith(".text")) {
+					files.add(dirPath);
+				}
+			}
+		}
 	}
 
 	/**
@@ -26,9 +124,10 @@ public class InvertedIndexThread {
 	 *
 	 * @param dirPath the path passed in to be verified
 	 * @param map     the data structure InvertedMap
-	 * @param wq      the workqueue pass in for multithreading
+	 * @param group   the group of build tasks
 	 */
-	public static void buildFromPath(Path dirPath, ThreadSafeInvertedMap map, WorkQueue wq) throws IOException {
+	public static void buildFromPath(Path dirPath, WritableIndexInterface map, WorkExecutor.TaskGroup group)
+			throws IOException {
 		if (Files.exists(dirPath)) {
 			if (Files.isDirectory(dirPath)) {
 				try (DirectoryStream<Path> listing = Files.newDirectoryStream(dirPath)) {
@@ -36,13 +135,13 @@ public class InvertedIndexThread {
 					Path file;
 					while (iterate.hasNext()) {
 						file = iterate.next();
-						buildFromPath(file, map, wq);
+						buildFromPath(file, map, group);
 					}
 				}
 			} else {
 				String check = dirPath.toString().toLowerCase();
 				if (check.endsWith(".txt") || check.endsWith(".text")) {
-					wq.execute(new BuildTask(dirPath, map));
+					group.execute(new BuildTask(dirPath, map));
 				}
 			}
 		}
@@ -59,7 +158,7 @@ public class InvertedIndexThread {
 	private static class BuildTask implements Runnable {
 
 		private Path file;
-		private ThreadSafeInvertedMap map;
+		private WritableIndexInterface map;
 
 		/**
 		 * Take in a file, parse and stem it word by word and put each word into
@@ -69,7 +168,7 @@ public class InvertedIndexThread {
 		 * @param file file to read and process
 		 * @param map  the data structure InvertedMap
 		 */
-		public BuildTask(Path file, ThreadSafeInvertedMap map) {
+		public BuildTask(Path file, WritableIndexInterface map) {
 			this.file = file;
 			this.map = map;
 		}
@@ -84,4 +183,94 @@ public class InvertedIndexThread {
 			}
 		}
 	}
+
+	/**
+	 * Adds files from a shared list to one local index until every file has been
+	 * taken by some worker
+	 */
+	private static class LocalBuildTask implements Runnable {
+
+		private final List<Path> files;
+		private final AtomicInteger next;
+		private final InvertedMap local;
+
+		/**
+		 * Initialize the task
+		 *
+		 * @param files the files to index
+		 * @param next  the number of the next file no worker has taken
+		 * @param local the local index of this worker
+		 */
+		public LocalBuildTask(List<Path> files, AtomicInteger next, InvertedMap local) {
+			this.files = files;
+			this.next = next;
+			this.local = local;
+		}
+
+		@Override
+		public void run() {
+			int i;
+			while ((i = next.getAndIncrement()) < files.size()) {
+				Path file = files.get(i);
+				try {
+					InvertedIndexBuilder.buildFromFile(file, local);
+				} catch (IOException e) {
+					System.out.println("Unable to index for this file: " + file + "using multithreading");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the local indexes for a run of word ranges by splitting the run in
+	 * half and merging both halves at the same time. The first range also gets
+	 * the word counts of every location, so they are added before any of the
+	 * positions.
+	 */
+	private static class MergeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<InvertedMap> partials;
+		private final List<String> bounds;
+		private final InvertedMap[] ranges;
+		private final int from;
+		private final int to;
+
+		/**
+		 * Initialize the task
+		 *
+		 * @param partials the local indexes
+		 * @param bounds   the first word of every range, then null, where null
+		 *                 also starts the first range
+		 * @param ranges   the merged index of every range
+		 * @param from     the first range to merge, inclusive
+		 * @param to       the last range to merge, exclusive
+		 */
+		public MergeTask(List<InvertedMap> partials, List<String> bounds, InvertedMap[] ranges, int from, int to) {
+			this.partials = partials;
+			this.bounds = bounds;
+			this.ranges = ranges;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				InvertedMap merged = new InvertedMap();
+				for (InvertedMap partial : partials) {
+					if (from == 0) {
+						merged.addLengths(partial);
+					}
+					merged.addRange(partial, bounds.get(from), bounds.get(from + 1));
+				}
+				ranges[from] = merged;
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new MergeTask(partials, bounds, ranges, from, middle),
+					new MergeTask(partials, bounds, ranges, middle, to));
+		}
+	}
 }
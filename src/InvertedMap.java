@@ -1,54 +1,131 @@
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 //Done with comment and javadoc
-public class InvertedMap {
+public class InvertedMap implements WritableIndexInterface {
 
 	/**
-	 * Declare the data structure is a TreeMap contains word, location, position
+	 * Words and locations are stored as dense int IDs. The postings of each word
+	 * are kept in a list indexed by the word ID, and the word count of each
+	 * location in the document table. Strings are only used again when a Result
+	 * is built or the index is written.
 	 */
-	// word, location, position
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> map;
-	private final TreeMap<String, Integer> wordTotal;
+	// word ID, location ID, position
+	private final TermDictionary terms;
+	private final ArrayList<Postings> postings;
+	private final DocumentTable documents;
+	private long version;
 
 	/**
 	 * Initialize
 	 */
 	public InvertedMap() {
-		this.map = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		this.wordTotal = new TreeMap<>();
+		this.terms = new TermDictionary();
+		this.postings = new ArrayList<>();
+		this.documents = new DocumentTable();
+		this.version = 0;
 	}
 
 	/**
-	 * Count the word in this specific location
+	 * Give the result of word count in specific location
 	 *
-	 * @param location  the location to count
-	 * @param wordTotal the result of counting
+	 * @param location the location to get
+	 * @return the total words in this location
 	 */
-	private void incrementWord(String location) {
-		if (wordTotal.containsKey(location)) {
-			wordTotal.put(location, wordTotal.get(location) + 1);
-		} else {
-			wordTotal.put(location, 1);
+	@Override
+	public int totalWord(String location) {
+		int document = documents.id(location);
+		return document < 0 ? 0 : documents.length(document);
+	}
+
+	/**
+	 * Give every location that has words in this index
+	 *
+	 * @return the locations
+	 */
+	ArrayList<String> allLocations() {
+		ArrayList<String> locations = new ArrayList<>(documents.size());
+		for (int i = 0; i < documents.size(); i++) {
+			locations.add(documents.name(i));
 		}
+		return locations;
 	}
 
 	/**
-	 * Give the result of word count in specific location
+	 * Give words that split the words of this index into ranges of about the same
+	 * number of words
 	 *
-	 * @param location the location to get
-	 * @return the total words in this location
+	 * @param count the number of ranges
+	 * @return the first word of every range but the first, in sorted order
 	 */
-	public int totalWord(String location) {
-		return wordTotal.getOrDefault(location, 0);
+	ArrayList<String> splitWords(int count) {
+		ArrayList<String> splitters = new ArrayList<>();
+		int[] sorted = terms.sortedIds();
+		int last = 0;
+		for (int i = 1; i < count; i++) {
+			int rank = (int) ((long) sorted.length * i / count);
+			if (rank > last) {
+				splitters.add(terms.term(sorted[rank]));
+				last = rank;
+			}
+		}
+		return splitters;
+	}
+
+	/**
+	 * Add the positions of the words of a temporary index from one word up to
+	 * another, without the word counts of its locations. Indexes given disjoint
+	 * ranges of the same temporary index can be added to at the same time.
+	 *
+	 * @param index the temporary index, which must not change meanwhile
+	 * @param from  the first word to add, inclusive, or null for the first word
+	 * @param to    the last word to add, exclusive, or null for no last word
+	 */
+	void addRange(InvertedMap index, String from, String to) {
+		int[] remap = new int[index.documents.size()];
+		Arrays.fill(remap, -1);
+		for (Map.Entry<String, Integer> entry : index.terms.range(from, to).entrySet()) {
+			Postings other = index.postings.get(entry.getValue());
+			for (int i = 0; i < other.size(); i++) {
+				int document = other.document(i);
+				if (remap[document] < 0) {
+					remap[document] = documents.intern(index.documents.name(document));
+				}
+			}
+			postings(terms.intern(entry.getKey())).addAll(other, remap);
+		}
+		version++;
+	}
+
+	/**
+	 * Add the word counts of the locations of a temporary index, without their
+	 * words
+	 *
+	 * @param index the temporary index
+	 */
+	void addLengths(InvertedMap index) {
+		for (int i = 0; i < index.documents.size(); i++) {
+			documents.increment(documents.intern(index.documents.name(i)), index.documents.length(i));
+		}
+		version++;
+	}
+
+	/**
+	 * Give the postings of this word ID, adding a new list if necessary
+	 *
+	 * @param term the word ID
+	 * @return the postings of this word
+	 */
+	private Postings postings(int term) {
+		if (term == postings.size()) {
+			postings.add(new Postings());
+		}
+		return postings.get(term);
 	}
 
 	/**
@@ -58,13 +135,12 @@ public class InvertedMap {
 	 * @param location the loading location
 	 * @param position the position word was found
 	 */
+	@Override
 	public void add(String word, String location, int position) {
-		map.putIfAbsent(word, new TreeMap<String, TreeSet<Integer>>());
-		TreeMap<String, TreeSet<Integer>> mapWord = map.get(word);
-		mapWord.putIfAbsent(location, new TreeSet<Integer>());
-		TreeSet<Integer> mapPosition = mapWord.get(location);
-		mapPosition.add(position);
-		incrementWord(location);
+		int document = documents.intern(location);
+		postings(terms.intern(word)).getOrCreate(document).add(position);
+		documents.increment(document, 1);
+		version++;
 	}
 
 	/**
@@ -72,28 +148,64 @@ public class InvertedMap {
 	 *
 	 * @param index inverted index
 	 */
+	@Override
 	public void addAll(InvertedMap index) {
-		for (String word : index.map.keySet()) {
-			if (this.map.containsKey(word)) {
-				for (String path : index.map.get(word).keySet()) {
-					if (this.map.get(word).containsKey(path)) {
-						this.map.get(word).get(path).addAll(index.map.get(word).get(path));
-					} else {
-						this.map.get(word).put(path, index.map.get(word).get(path));
-					}
-				}
-			} else {
-				this.map.put(word, index.map.get(word));
-			}
+		int[] remap = new int[index.documents.size()];
+		for (int i = 0; i < remap.length; i++) {
+			remap[i] = this.documents.intern(index.documents.name(i));
+			this.documents.increment(remap[i], index.documents.length(i));
 		}
 
-		for (String path : index.wordTotal.keySet()) {
-			if (!this.wordTotal.containsKey(path)) {
-				this.wordTotal.put(path, index.wordTotal.get(path));
-			} else {
-				this.wordTotal.put(path, this.wordTotal.get(path) + index.wordTotal.get(path));
-			}
+		for (int i = 0; i < index.terms.size(); i++) {
+			int term = this.terms.intern(index.terms.term(i));
+			postings(term).addAll(index.postings.get(i), remap);
 		}
+		version++;
+	}
+
+	@Override
+	public long version() {
+		return version;
+	}
+
+	/**
+	 * Give a cursor over every word, location and position of this index in
+	 * sorted order
+	 *
+	 * @return a cursor over this index
+	 */
+	@Override
+	public IndexCursor cursor() {
+		return new Cursor(0, terms.size());
+	}
+
+	@Override
+	public IndexCursor cursor(int from, int to) {
+		return new Cursor(from, Math.min(to, terms.size()));
+	}
+
+	/**
+	 * Copy this index into an immutable, compressed snapshot for searching once
+	 * the index will not change anymore
+	 *
+	 * @return the snapshot of this index
+	 */
+	@Override
+	public IndexSnapshot freeze() {
+		return IndexSnapshot.build(cursor(), wordTotal());
+	}
+
+	/**
+	 * Give the total words of every location, sorted by location
+	 *
+	 * @return the word count of every location
+	 */
+	private TreeMap<String, Integer> wordTotal() {
+		TreeMap<String, Integer> wordTotal = new TreeMap<>();
+		for (int i = 0; i < documents.size(); i++) {
+			wordTotal.put(documents.name(i), documents.length(i));
+		}
+		return wordTotal;
 	}
 
 	/**
@@ -101,7 +213,21 @@ public class InvertedMap {
 	 */
 	@Override
 	public String toString() {
-		return map.toString();
+		StringBuilder builder = new StringBuilder("{");
+		IndexCursor cursor = cursor();
+		boolean firstWord = true;
+		while (cursor.nextWord()) {
+			builder.append(firstWord ? "" : ", ").append(cursor.word()).append("={");
+			boolean firstLocation = true;
+			while (cursor.nextLocation()) {
+				builder.append(firstLocation ? "" : ", ").append(cursor.location()).append('=');
+				builder.append(cursor.positions());
+				firstLocation = false;
+			}
+			builder.append('}');
+			firstWord = false;
+		}
+		return builder.append('}').toString();
 	}
 
 	/**
@@ -109,10 +235,9 @@ public class InvertedMap {
 	 *
 	 * @param map the invertedMap you want to write
 	 */
+	@Override
 	public void write(Path outputPath) throws IOException {
-		try (var writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-			writer.write(TreeJSONWriter.asHighNestedObject(map));
-		}
+		TreeJSONWriter.asHighNestedObject(cursor(), outputPath);
 	}
 
 	/*
@@ -124,9 +249,11 @@ public class InvertedMap {
 	 * @param outputPath the output path of the result
 	 * @throws IOException
 	 */
+	@Override
 	public void writeLocation(Path outputPath) throws IOException {
-		try (var writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
-			writer.write(TreeJSONWriter.asObject(wordTotal));
+		TreeMap<String, Integer> wordTotal = wordTotal();
+		try (var writer = TreeJSONWriter.newWriter(outputPath)) {
+			TreeJSONWriter.asObject(wordTotal, writer, 0);
 		}
 	}
 
@@ -137,8 +264,25 @@ public class InvertedMap {
 	 * @param word the word to check
 	 * @return true if it's in the map, else false
 	 */
+	@Override
 	public boolean contains(String word) {
-		return map.containsKey(word);
+		return terms.id(word) >= 0;
+	}
+
+	/**
+	 * Give the positions of the word in this location
+	 *
+	 * @param word     the word to look up
+	 * @param location the location to look up
+	 * @return the positions, or null if the word is not in this location
+	 */
+	private PositionList find(String word, String location) {
+		int term = terms.id(word);
+		int document = documents.id(location);
+		if (term < 0 || document < 0) {
+			return null;
+		}
+		return postings.get(term).get(document);
 	}
 
 	/**
@@ -149,13 +293,9 @@ public class InvertedMap {
 	 * @param path the path to check
 	 * @return
 	 */
+	@Override
 	public boolean contains(String word, String location) {
-		if (contains(word)) {
-			if (map.get(word).containsKey(location)) {
-				return true;
-			}
-		}
-		return false;
+		return find(word, location) != null;
 	}
 
 	/**
@@ -167,13 +307,10 @@ public class InvertedMap {
 	 * @param location the location to check
 	 * @return
 	 */
+	@Override
 	public boolean contains(String word, String location, int position) {
-		if (contains(word, location)) {
-			if (map.get(word).get(location).contains(position)) {
-				return true;
-			}
-		}
-		return false;
+		PositionList list = find(word, location);
+		return list != null && list.contains(position);
 	}
 
 	/**
@@ -181,8 +318,9 @@ public class InvertedMap {
 	 *
 	 * @return count of the total word in this invertedMap
 	 */
+	@Override
 	public int words() {
-		return map.size();
+		return terms.size();
 	}
 
 	/**
@@ -191,12 +329,10 @@ public class InvertedMap {
 	 * @param word the word to check
 	 * @return count of the location of this word in this invertedMap
 	 */
+	@Override
 	public int locations(String word) {
-		if (map.containsKey(word)) {
-			return map.get(word).size();
-		} else {
-			return 0;
-		}
+		int term = terms.id(word);
+		return term < 0 ? 0 : postings.get(term).size();
 	}
 
 	/**
@@ -206,8 +342,10 @@ public class InvertedMap {
 	 * @param location the location to check
 	 * @return count of position of the location of this word in this invertedMap
 	 */
+	@Override
 	public int positions(String word, String location) {
-		return (contains(word, location) ? map.get(word).get(location).size() : 0);
+		PositionList list = find(word, location);
+		return list == null ? 0 : list.size();
 	}
 
 	/**
@@ -217,16 +355,22 @@ public class InvertedMap {
 	 *
 	 * @return An ArrayList of Result data structure
 	 */
+	@Override
 	public ArrayList<Result> exactSearch(Collection<String> queryLine) {
+		return exactSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queryLine, int limit) {
 		ArrayList<Result> results = new ArrayList<>();
-		HashMap<String, Result> hashMap = new HashMap<>();
+		Result[] found = new Result[documents.size()];
 		for (String word : queryLine) {
-			if (map.containsKey(word)) {
-				searchWork(hashMap, word, results);
+			int term = terms.id(word);
+			if (term >= 0) {
+				searchWork(found, term, results);
 			}
 		}
-		Collections.sort(results);
-		return results;
+		return ResultHeap.top(results, limit);
 	}
 
 	/**
@@ -235,42 +379,118 @@ public class InvertedMap {
 	 * @param line to search
 	 * @return An ArrayList of Result data structure
 	 */
+	@Override
 	public ArrayList<Result> partialSearch(Collection<String> queryLine) {
+		return partialSearch(queryLine, 0);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queryLine, int limit) {
 		ArrayList<Result> results = new ArrayList<>();
-		HashMap<String, Result> hashMap = new HashMap<>();
+		Result[] found = new Result[documents.size()];
 		for (String word : queryLine) {
-			for (String key : map.tailMap(word).keySet()) {
-				if (key.startsWith(word)) {
-					searchWork(hashMap, key, results);
+			for (Map.Entry<String, Integer> entry : terms.tailMap(word).entrySet()) {
+				if (entry.getKey().startsWith(word)) {
+					searchWork(found, entry.getValue(), results);
 				} else {
 					break;
 				}
 			}
 		}
-		Collections.sort(results);
-		return results;
+		return ResultHeap.top(results, limit);
 	}
 
 	/**
 	 *
-	 * @param result hashMap that stores the Result and it's corresponding key
-	 * @param key    the single search query
-	 * @param list   the arrayList that stores Result
+	 * @param found the Result of every location found so far, indexed by location
+	 *              ID
+	 * @param term  the ID of the single search query
+	 * @param list  the arrayList that stores Result
 	 *
-	 *               The helper method that do the search
+	 *              The helper method that do the search
 	 */
-	private void searchWork(HashMap<String, Result> result, String key, ArrayList<Result> list) {
-		TreeMap<String, TreeSet<Integer>> wordPosition = map.get(key);
-		for (String location : wordPosition.keySet()) {
-			if (result.containsKey(location)) {
-				result.get(location).setMatch(wordPosition.get(location).size());
+	private void searchWork(Result[] found, int term, ArrayList<Result> list) {
+		Postings wordPosition = postings.get(term);
+		for (int i = 0; i < wordPosition.size(); i++) {
+			int document = wordPosition.document(i);
+			int totalMatched = wordPosition.positions(i).size();
+			if (found[document] != null) {
+				found[document].setMatch(totalMatched);
 			} else {
-				int totalWords = totalWord(location);
-				int totalMatched = wordPosition.get(location).size();
-				Result r = new Result(location, totalMatched, totalWords);
+				Result r = new Result(documents.name(document), totalMatched, documents.length(document));
 				list.add(r);
-				result.put(location, r);
+				found[document] = r;
 			}
 		}
 	}
+
+	/**
+	 * Walks the words in sorted order, and the locations of each word in the
+	 * order of their names
+	 */
+	private class Cursor implements IndexCursor {
+
+		private final int[] words;
+		private final int[] ranks;
+		private final int end;
+		private int index;
+		private String word;
+		private Postings current;
+		private long[] order;
+		private int next;
+
+		/**
+		 * Initialize the cursor before the first word of the range
+		 *
+		 * @param from the number of the first word in sorted order, inclusive
+		 * @param to   the number of the last word in sorted order, exclusive
+		 */
+		public Cursor(int from, int to) {
+			this.words = terms.sortedIds();
+			this.ranks = documents.ranks();
+			this.order = new long[0];
+			this.end = to;
+			this.index = from - 1;
+		}
+
+		@Override
+		public boolean nextWord() {
+			if (index + 1 >= end) {
+				return false;
+			}
+			int id = words[++index];
+			word = terms.term(id);
+			current = postings.get(id);
+			if (order.length < current.size()) {
+				order = new long[current.size()];
+			}
+			// sort the postings by location name rank, remembering their index
+			for (int i = 0; i < current.size(); i++) {
+				order[i] = ((long) ranks[current.document(i)] << 32) | i;
+			}
+			Arrays.sort(order, 0, current.size());
+			next = -1;
+			return true;
+		}
+
+		@Override
+		public String word() {
+			return word;
+		}
+
+		@Override
+		public boolean nextLocation() {
+			return ++next < current.size();
+		}
+
+		@Override
+		public String location() {
+			return documents.name(current.document((int) order[next]));
+		}
+
+		@Override
+		public PositionList positions() {
+			return current.positions((int) order[next]);
+		}
+	}
 }
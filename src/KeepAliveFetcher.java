@@ -0,0 +1,686 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Fetches pages over HTTP/1.1 keep-alive connections. A connection is put back
+ * in a pool for its host after each response, so a crawl of one site opens
+ * only a few sockets and does each TLS handshake once per connection instead
+ * of once per page. Responses may be compressed with gzip or deflate and sent
+ * in chunks, and the body is returned as bytes.
+ *
+ * Unlike {@link HttpsFetcher}, the body is not split into lines, so it is kept
+ * exactly as sent. Every method is thread safe.
+ */
+public class KeepAliveFetcher {
+
+	/** The default maximum number of idle connections kept for each host */
+	public static final int DEFAULT_IDLE_PER_HOST = 8;
+
+	/** How long an idle connection is kept, in milliseconds */
+	public static final long IDLE_TIMEOUT = 15000;
+
+	/** How long to wait for the server to send, in milliseconds */
+	public static final int READ_TIMEOUT = 30000;
+
+	/** The longest status or header line accepted */
+	private static final int MAX_LINE = 65536;
+
+	/** The largest body accepted once decoded, so a small compressed body cannot fill the heap */
+	public static final int MAX_BODY = 32 * 1024 * 1024;
+
+	/** The fetcher shared by every crawl */
+	private static final KeepAliveFetcher SHARED = new KeepAliveFetcher(DEFAULT_IDLE_PER_HOST);
+
+	private final ConcurrentHashMap<String, ConcurrentLinkedDeque<Connection>> idle;
+	private final int maxIdle;
+
+	private final LongAdder requests;
+	private final LongAdder opened;
+	private final LongAdder reused;
+	private final LongAdder received;
+	private final LongAdder decoded;
+
+	/**
+	 * Initialize a fetcher with no open connections
+	 *
+	 * @param maxIdle the maximum number of idle connections kept for each host
+	 */
+	public KeepAliveFetcher(int maxIdle) {
+		this.idle = new ConcurrentHashMap<>();
+		this.maxIdle = maxIdle;
+		this.requests = new LongAdder();
+		this.opened = new LongAdder();
+		this.reused = new LongAdder();
+		this.received = new LongAdder();
+		this.decoded = new LongAdder();
+	}
+
+	/**
+	 * Give the shared fetcher
+	 *
+	 * @return the fetcher shared by every crawl
+	 */
+	public static KeepAliveFetcher shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Fetch a URL with a GET request, reusing an idle connection to its host if
+	 * there is one. A reused connection the server has already closed is
+	 * replaced by a new one and the request is sent again.
+	 *
+	 * @param url the url to fetch
+	 * @return the response
+	 * @throws IOException if unable to fetch the url
+	 */
+	public Response fetch(URL url) throws IOException {
+		return fetch(url, Collections.emptyMap());
+	}
+
+	/**
+	 * Fetch a URL with a GET request that has extra headers, such as the
+	 * conditions of a conditional GET
+	 *
+	 * @param url     the url to fetch
+	 * @param headers the extra headers by name
+	 * @return the response
+	 * @throws IOException if unable to fetch the url
+	 * @see #fetch(URL)
+	 */
+	public Response fetch(URL url, Map<String, String> headers) throws IOException {
+		String key = key(url);
+		Connection connection = take(key);
+		if (connection != null) {
+			try {
+				return fetch(url, headers, connection, key);
+			} catch (IOException e) {
+				// the server closed the idle connection, try once on a new one
+			}
+		}
+		return fetch(url, headers, open(url), key);
+	}
+
+	/**
+	 * Send the request on a connection and read the response, then put the
+	 * connection back in the pool if the server keeps it open
+	 *
+	 * @param url        the url to fetch
+	 * @param headers    the extra headers of the request
+	 * @param connection the connection to use
+	 * @param key        the pool of the host
+	 * @return the response
+	 * @throws IOException if unable to fetch the url, the connection is closed
+	 */
+	private Response fetch(URL url, Map<String, String> headers, Connection connection, String key)
+			throws IOException {
+		requests.increment();
+		try {
+			connection.send(url, headers);
+			Response response = connection.receive();
+			if (response.keepAlive) {
+				release(key, connection);
+			} else {
+				connection.close();
+			}
+			return response;
+		} catch (IOException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Give the pool key of the host of a URL
+	 *
+	 * @param url the url
+	 * @return the protocol, host and port of the url
+	 */
+	private static String key(URL url) {
+		return url.getProtocol().toLowerCase(Locale.ROOT) + "://" + url.getHost().toLowerCase(Locale.ROOT) + ":"
+				+ port(url);
+	}
+
+	/**
+	 * Give the port of a URL, using the default port of its protocol if none is
+	 * given
+	 *
+	 * @param url the url
+	 * @return the port
+	 */
+	private static int port(URL url) {
+		return url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+	}
+
+	/**
+	 * Take an idle connection to a host, closing the ones that waited too long
+	 *
+	 * @param key the pool of the host
+	 * @return the connection, or null if there is no usable idle one
+	 */
+	private Connection take(String key) {
+		ConcurrentLinkedDeque<Connection> pool = idle.get(key);
+		if (pool == null) {
+			return null;
+		}
+		Connection connection;
+		while ((connection = pool.pollLast()) != null) {
+			if (connection.usable()) {
+				reused.increment();
+				return connection;
+			}
+			connection.close();
+		}
+		return null;
+	}
+
+	/**
+	 * Put a connection back in the pool of its host, or close it if the pool is
+	 * full
+	 *
+	 * @param key        the pool of the host
+	 * @param connection the connection
+	 */
+	private void release(String key, Connection connection) {
+		ConcurrentLinkedDeque<Connection> pool = idle.computeIfAbsent(key, k -> new ConcurrentLinkedDeque<>());
+		connection.idleSince = System.currentTimeMillis();
+		pool.addLast(connection);
+		while (pool.size() > maxIdle) {
+			Connection extra = pool.pollFirst();
+			if (extra == null) {
+				break;
+			}
+			extra.close();
+		}
+	}
+
+	/**
+	 * Open a new connection to the host of a URL
+	 *
+	 * @param url the url
+	 * @return the connection
+	 * @throws IOException if unable to connect
+	 */
+	private Connection open(URL url) throws IOException {
+		boolean https = url.getProtocol().equalsIgnoreCase("https");
+		if (!https && !url.getProtocol().equalsIgnoreCase("http")) {
+			throw new IOException("Unable to fetch this protocol: " + url.getProtocol());
+		}
+		Socket socket = https ? SSLSocketFactory.getDefault().createSocket(url.getHost(), port(url))
+				: SocketFactory.getDefault().createSocket(url.getHost(), port(url));
+		opened.increment();
+		return new Connection(socket);
+	}
+
+	/**
+	 * Close every idle connection. Connections in use when this is called are
+	 * still put back in the pool when their response has been read.
+	 */
+	public void closeIdle() {
+		for (ConcurrentLinkedDeque<Connection> pool : idle.values()) {
+			Connection connection;
+			while ((connection = pool.pollFirst()) != null) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * Give the number of requests sent
+	 *
+	 * @return the number of requests
+	 */
+	public long requests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Give the number of connections opened
+	 *
+	 * @return the number of connections
+	 */
+	public long opened() {
+		return opened.sum();
+	}
+
+	/**
+	 * Give the number of requests sent on a connection that was used before
+	 *
+	 * @return the number of reused connections
+	 */
+	public long reused() {
+		return reused.sum();
+	}
+
+	@Override
+	public String toString() {
+		long wire = received.sum();
+		long body = decoded.sum();
+		return String.format(
+				"KeepAliveFetcher: %d requests, %d connections opened, %d reused, %d body bytes received for %d decoded (%.1f%% saved)",
+				requests(), opened(), reused(), wire, body, body == 0 ? 0 : (body - wire) * 100.0 / body);
+	}
+
+	/**
+	 * A response of a server
+	 */
+	public static class Response {
+
+		private final String statusLine;
+		private final int status;
+		private final TreeMap<String, List<String>> headers;
+		private final byte[] body;
+		private final boolean keepAlive;
+
+		/**
+		 * Initialize a response
+		 *
+		 * @param statusLine the status line
+		 * @param status     the status code
+		 * @param headers    the headers, with names compared ignoring case
+		 * @param body       the decoded body
+		 * @param keepAlive  true if the connection may be reused
+		 */
+		private Response(String statusLine, int status, TreeMap<String, List<String>> headers, byte[] body,
+				boolean keepAlive) {
+			this.statusLine = statusLine;
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+			this.keepAlive = keepAlive;
+		}
+
+		/**
+		 * Give the status line, for example "HTTP/1.1 200 OK"
+		 *
+		 * @return the status line
+		 */
+		public String statusLine() {
+			return statusLine;
+		}
+
+		/**
+		 * Give the status code
+		 *
+		 * @return the status code
+		 */
+		public int status() {
+			return status;
+		}
+
+		/**
+		 * Give the first value of a header
+		 *
+		 * @param name the name of the header, in any case
+		 * @return the value, or null if the header was not sent
+		 */
+		public String header(String name) {
+			List<String> values = headers.get(name);
+			return values == null ? null : values.get(0);
+		}
+
+		/**
+		 * Give every value of a header
+		 *
+		 * @param name the name of the header, in any case
+		 * @return the values, empty if the header was not sent
+		 */
+		public List<String> headers(String name) {
+			return Collections.unmodifiableList(headers.getOrDefault(name, Collections.emptyList()));
+		}
+
+		/**
+		 * Give the body, after undoing the chunking and compression. The array is not
+		 * copied and must not be changed.
+		 *
+		 * @return the body
+		 */
+		public byte[] body() {
+			return body;
+		}
+
+		/**
+		 * Give the body as text, in the charset of its content type or UTF-8
+		 *
+		 * @return the body as text
+		 */
+		public String text() {
+			Charset charset = StandardCharsets.UTF_8;
+			String type = header("Content-Type");
+			if (type != null) {
+				int start = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+				if (start >= 0) {
+					String name = type.substring(start + 8).split(";", 2)[0].trim().replace("\"", "");
+					try {
+						charset = Charset.forName(name);
+					} catch (IllegalArgumentException e) {
+						// unknown charsets are read as UTF-8
+					}
+				}
+			}
+			return new String(body, charset);
+		}
+
+		/**
+		 * Check if the content type is HTML
+		 *
+		 * @return true if the content type contains html
+		 */
+		public boolean isHTML() {
+			String type = header("Content-Type");
+			return type != null && type.contains("html");
+		}
+
+		/**
+		 * Check if the status code is a redirect
+		 *
+		 * @return true if the status code is 3xx
+		 */
+		public boolean isRedirect() {
+			return status >= 300 && status < 400;
+		}
+	}
+
+	/**
+	 * One open connection to a host
+	 */
+	private class Connection {
+
+		private final Socket socket;
+		private final InputStream in;
+		private final OutputStream out;
+		private long idleSince;
+
+		/**
+		 * Initialize a connection on an open socket
+		 *
+		 * @param socket the socket
+		 * @throws IOException if unable to use the socket
+		 */
+		private Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			socket.setSoTimeout(READ_TIMEOUT);
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		/**
+		 * Check if the connection can still be used. A connection the server closed
+		 * while it was idle has data or the end of the stream ready to read.
+		 *
+		 * @return true if the connection can be used
+		 */
+		private boolean usable() {
+			if (socket.isClosed() || System.currentTimeMillis() - idleSince > IDLE_TIMEOUT) {
+				return false;
+			}
+			try {
+				return in.available() == 0 && !socket.isInputShutdown();
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Send a GET request
+		 *
+		 * @param url     the url to fetch
+		 * @param headers the extra headers of the request
+		 * @throws IOException if unable to send
+		 */
+		private void send(URL url, Map<String, String> headers) throws IOException {
+			String resource = url.getFile().isEmpty() ? "/" : url.getFile();
+			String host = url.getPort() < 0 || url.getPort() == url.getDefaultPort() ? url.getHost()
+					: url.getHost() + ":" + url.getPort();
+			StringBuilder request = new StringBuilder();
+			request.append("GET ").append(resource).append(" HTTP/1.1\r\n").append("Host: ").append(host).append("\r\n");
+			request.append("Accept-Encoding: gzip, deflate\r\n").append("Connection: keep-alive\r\n");
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+			}
+			request.append("\r\n");
+			out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+			out.flush();
+		}
+
+		/**
+		 * Read a response, skipping informational ones
+		 *
+		 * @return the response
+		 * @throws IOException if unable to read a complete response
+		 */
+		private Response receive() throws IOException {
+			String statusLine;
+			int status;
+			TreeMap<String, List<String>> headers;
+			do {
+				statusLine = readLine();
+				if (statusLine == null) {
+					throw new EOFException("Connection closed before the response");
+				}
+				status = status(statusLine);
+				headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+				String line;
+				while ((line = readLine()) != null && !line.isEmpty()) {
+					int colon = line.indexOf(':');
+					if (colon > 0) {
+						headers.computeIfAbsent(line.substring(0, colon).trim(), k -> new ArrayList<>())
+								.add(line.substring(colon + 1).trim());
+					}
+				}
+			} while (status >= 100 && status < 200);
+
+			String connection = value(headers, "Connection");
+			boolean keepAlive = statusLine.startsWith("HTTP/1.1") ? !connection.contains("close")
+					: connection.contains("keep-alive");
+
+			byte[] raw;
+			String length = value(headers, "Content-Length");
+			if (status == 204 || status == 304) {
+				raw = new byte[0];
+			} else if (value(headers, "Transfer-Encoding").contains("chunked")) {
+				raw = readChunked();
+			} else if (!length.isEmpty()) {
+				raw = readExactly(length);
+			} else {
+				// the body ends when the server closes the connection
+				raw = in.readAllBytes();
+				keepAlive = false;
+			}
+			byte[] body = decode(raw, value(headers, "Content-Encoding"));
+			received.add(raw.length);
+			decoded.add(body.length);
+			return new Response(statusLine, status, headers, body, keepAlive);
+		}
+
+		/**
+		 * Read a body of a known length
+		 *
+		 * @param length the Content-Length header
+		 * @return the body
+		 * @throws IOException if the body is cut short or the length is not a number
+		 */
+		private byte[] readExactly(String length) throws IOException {
+			int size;
+			try {
+				size = Integer.parseInt(length.split(",", 2)[0].trim());
+			} catch (NumberFormatException e) {
+				throw new IOException("Unable to process this content length: " + length);
+			}
+			byte[] body = in.readNBytes(size);
+			if (body.length < size) {
+				throw new EOFException("Connection closed before the end of the body");
+			}
+			return body;
+		}
+
+		/**
+		 * Read a chunked body and the trailers after it
+		 *
+		 * @return the body without the chunk sizes
+		 * @throws IOException if a chunk is cut short or malformed
+		 */
+		private byte[] readChunked() throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			while (true) {
+				String line = readLine();
+				if (line == null) {
+					throw new EOFException("Connection closed before the end of the body");
+				}
+				int size;
+				try {
+					size = Integer.parseInt(line.split(";", 2)[0].trim(), 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Unable to process this chunk size: " + line);
+				}
+				if (size == 0) {
+					while ((line = readLine()) != null && !line.isEmpty()) {
+						// trailers are not used
+					}
+					return body.toByteArray();
+				}
+				byte[] chunk = in.readNBytes(size);
+				if (chunk.length < size) {
+					throw new EOFException("Connection closed before the end of the body");
+				}
+				body.write(chunk);
+				readLine();
+			}
+		}
+
+		/**
+		 * Read a line ending with CRLF or LF
+		 *
+		 * @return the line without its ending, or null at the end of the stream
+		 * @throws IOException if unable to read or the line is too long
+		 */
+		private String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int b;
+			while ((b = in.read()) != '\n') {
+				if (b < 0) {
+					return line.length() == 0 ? null : line.toString();
+				}
+				if (line.length() == MAX_LINE) {
+					throw new IOException("Header line too long");
+				}
+				line.append((char) b);
+			}
+			int end = line.length();
+			if (end > 0 && line.charAt(end - 1) == '\r') {
+				line.setLength(end - 1);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Close the connection, ignoring errors
+		 */
+		private void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing more to do with a broken connection
+			}
+		}
+	}
+
+	/**
+	 * Give the status code of a status line
+	 *
+	 * @param statusLine the status line
+	 * @return the status code
+	 * @throws IOException if the status line has no status code
+	 */
+	private static int status(String statusLine) throws IOException {
+		String[] parts = statusLine.split(" ", 3);
+		try {
+			return Integer.parseInt(parts[1]);
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			throw new IOException("Unable to process this status line: " + statusLine);
+		}
+	}
+
+	/**
+	 * Give the values of a header joined with commas and in lower case
+	 *
+	 * @param headers the headers
+	 * @param name    the name of the header
+	 * @return the values, or an empty string if the header was not sent
+	 */
+	private static String value(TreeMap<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null ? "" : String.join(",", values).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Undo the content encoding of a body
+	 *
+	 * @param raw      the body as sent
+	 * @param encoding the Content-Encoding header in lower case
+	 * @return the decoded body
+	 * @throws IOException if the body is not valid for its encoding or decodes to
+	 *                     more than {@link #MAX_BODY} bytes
+	 */
+	private static byte[] decode(byte[] raw, String encoding) throws IOException {
+		if (encoding.contains("gzip")) {
+			try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(raw))) {
+				return readLimited(gzip);
+			}
+		}
+		if (encoding.contains("deflate")) {
+			// deflate should be zlib wrapped, but some servers send it raw
+			try (InputStream zlib = new InflaterInputStream(new ByteArrayInputStream(raw))) {
+				return readLimited(zlib);
+			} catch (ZipException e) {
+				Inflater inflater = new Inflater(true);
+				try (InputStream deflate = new InflaterInputStream(new ByteArrayInputStream(raw), inflater)) {
+					return readLimited(deflate);
+				} finally {
+					inflater.end();
+				}
+			}
+		}
+		return raw;
+	}
+
+	/**
+	 * Read a decoded body, giving up once it is larger than {@link #MAX_BODY}
+	 *
+	 * @param in the decoding stream
+	 * @return the decoded body
+	 * @throws IOException if unable to decode the body or it is too large
+	 */
+	private static byte[] readLimited(InputStream in) throws IOException {
+		byte[] body = in.readNBytes(MAX_BODY + 1);
+		if (body.length > MAX_BODY) {
+			throw new IOException("Unable to decode a body larger than this many bytes: " + MAX_BODY);
+		}
+		return body;
+	}
+}
@@ -19,6 +19,9 @@ public class LinkParser {
 	// https://docs.oracle.com/javase/tutorial/networking/urls/creatingUrls.html
 	// https://developer.mozilla.org/en-US/docs/Learn/Common_questions/What_is_a_URL
 
+	/** Matches the href of an anchor tag in HTML without whitespace */
+	private static final Pattern LINK = Pattern.compile("(?i)<a(?:[^<>]*?)href=\"([^\"]+?)\"");
+
 	/**
 	 * Removes the fragment component of a URL (if present), and properly encodes
 	 * the query string (if necessary).
@@ -83,23 +86,34 @@ public class LinkParser {
 	public static ArrayList<URL> listLinks(URL base, String html) throws MalformedURLException {
 		ArrayList<URL> links = new ArrayList<URL>();
 		int GROUP = 1;
-		URL link;
-		String REGEX = "(?i)<a(?:[^<>]*?)href=\"([^\"]+?)\"";
-		Matcher match = Pattern.compile(REGEX).matcher(html.replaceAll("\\s", "").trim());
+		Matcher match = LINK.matcher(html.replaceAll("\\s", "").trim());
 		while (match.find()) {
-			String site = match.group(GROUP);
-			if (!site.startsWith("http")) {
-				link = new URL(base, site);
-			} else {
-				link = new URL(site);
-			}
-			if (link.toString().startsWith("http")) {
-				links.add(clean(link));
+			URL link = resolve(base, match.group(GROUP));
+			if (link != null) {
+				links.add(link);
 			}
 		}
 		return links;
 	}
 
+	/**
+	 * Convert the href of a link to an absolute, cleaned URL
+	 *
+	 * @param base base url used to convert relative links to absolute
+	 * @param site the href of the link
+	 * @return the cleaned link, or null if it is not an http(s) link
+	 * @throws MalformedURLException if the link is not a valid URL
+	 */
+	public static URL resolve(URL base, String site) throws MalformedURLException {
+		URL link;
+		if (!site.startsWith("http")) {
+			link = new URL(base, site);
+		} else {
+			link = new URL(site);
+		}
+		return link.toString().startsWith("http") ? clean(link) : null;
+	}
+
 	public static void main(String[] args) throws MalformedURLException {
 		String link = "https://www.cs.usfca.edu/~cs212/simple/";
 		URL url = new URL(link);
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Finds the best results of a query one location at a time using the MaxScore
+ * algorithm. The score of a location is the sum of the counts of every query
+ * word divided by its total words, so each word adds at most its
+ * {@link PostingIterator#maxScore()} to any location.
+ *
+ * Once the heap of best results is full, the words whose upper bounds add up to
+ * less than the worst kept score can no longer make a result on their own.
+ * Those words are only checked for locations found through the other words,
+ * and a location is dropped as soon as its best possible score falls below the
+ * worst kept score.
+ */
+public class MaxScoreSearch {
+
+	/**
+	 * Allows for rounding when comparing upper bounds, so a location is only
+	 * dropped when it certainly scores lower than the worst kept result
+	 */
+	private static final double SLACK = 1 + 1e-9;
+
+	/**
+	 * Find the best results of the postings of the query words
+	 *
+	 * @param iterators the postings of every query word, one per word
+	 * @param limit     the maximum number of results, at least 1
+	 * @param names     gives the location with an ID
+	 * @param lengths   gives the total words of the location with an ID
+	 * @return the best results, best first
+	 */
+	public static ArrayList<Result> search(List<PostingIterator> iterators, int limit, IntFunction<String> names,
+			IntUnaryOperator lengths) {
+		PostingIterator[] sorted = iterators.toArray(new PostingIterator[0]);
+		Arrays.sort(sorted, Comparator.comparingDouble(PostingIterator::maxScore));
+
+		// bound[i] is the highest score words 0 to i can add together
+		double[] bound = new double[sorted.length];
+		double sum = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			sum += sorted[i].maxScore();
+			bound[i] = sum;
+		}
+
+		PriorityQueue<PostingIterator> essential = new PriorityQueue<>(Math.max(1, sorted.length),
+				Comparator.comparingInt(PostingIterator::location));
+		for (PostingIterator iterator : sorted) {
+			essential.add(iterator);
+		}
+
+		ResultHeap heap = new ResultHeap(limit);
+		double threshold = 0;
+		int first = 0; // the first essential word
+
+		while (!essential.isEmpty() && essential.peek().location() != PostingIterator.NO_MORE) {
+			int location = essential.peek().location();
+			int matched = 0;
+			while (!essential.isEmpty() && essential.peek().location() == location) {
+				PostingIterator iterator = essential.poll();
+				matched += iterator.count();
+				iterator.next();
+				essential.add(iterator);
+			}
+
+			int length = lengths.applyAsInt(location);
+			boolean dropped = false;
+			for (int i = first - 1; i >= 0; i--) {
+				if (heap.isFull() && ((double) matched / length + bound[i]) * SLACK < threshold) {
+					dropped = true;
+					break;
+				}
+				if (sorted[i].advance(location) == location) {
+					matched += sorted[i].count();
+				}
+			}
+			if (dropped || (heap.isFull() && (double) matched / length * SLACK < threshold)) {
+				continue;
+			}
+
+			heap.offer(new Result(names.apply(location), matched, length));
+			if (heap.isFull()) {
+				threshold = heap.worst().score();
+				while (first < sorted.length && bound[first] * SLACK < threshold) {
+					essential.remove(sorted[first]);
+					first++;
+				}
+			}
+		}
+		return heap.toSortedList();
+	}
+}
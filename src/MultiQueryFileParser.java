@@ -1,32 +1,44 @@
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class MultiQueryFileParser implements QueryInterface {
 
 	private final TreeMap<String, ArrayList<Result>> results;
-	private final InvertedMap map;
-	private final WorkQueue wq;
+	private final IndexInterface map;
+	private final WorkExecutor wq;
+	private final QueryCache cache;
+
+	/**
+	 * Initialize the data structure
+	 *
+	 * @param map the index to search
+	 * @param wq  the executor pass in for multithreading
+	 */
+	public MultiQueryFileParser(IndexInterface map, WorkExecutor wq) {
+		this(map, wq, new QueryCache(map));
+	}
 
 	/**
 	 * Initialize the data structure
 	 *
-	 * @param QueryLine the query line to deal with
-	 * @param resultSet a set of result
+	 * @param map   the index to search
+	 * @param wq    the executor pass in for multithreading
+	 * @param cache the cache of search results, shared with other parsers
 	 */
-	public MultiQueryFileParser(InvertedMap map, WorkQueue wq) {
+	public MultiQueryFileParser(IndexInterface map, WorkExecutor wq, QueryCache cache) {
 		this.results = new TreeMap<String, ArrayList<Result>>();
 		this.map = map;
 		this.wq = wq;
+		this.cache = cache;
 	}
 
 	/**
@@ -49,13 +61,36 @@ public class MultiQueryFileParser implements QueryInterface {
 	 */
 	@Override
 	public void searchForQuery(Path queryFile, boolean exact) throws IOException {
+		searchForQuery(queryFile, exact, 0);
+	}
+
+	/**
+	 * take in a queryFile and stem each line, then store the best results of each
+	 *
+	 * @param queryFile the queryFile to process
+	 * @param exact     exact search or not
+	 * @param limit     the maximum number of results per query, or 0 or less for
+	 *                  all
+	 * @throws IOException
+	 */
+	@Override
+	public void searchForQuery(Path queryFile, boolean exact, int limit) throws IOException {
+		WorkExecutor.TaskGroup group = wq.group();
 		try (BufferedReader reader = Files.newBufferedReader(queryFile, StandardCharsets.UTF_8)) {
 			String line = "";
 			while ((line = reader.readLine()) != null) {
-				wq.execute(new SearchTask(exact, line));
+				group.execute(new SearchTask(exact, line, limit));
+			}
+		} finally {
+			try {
+				group.finish();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while searching: " + queryFile);
+			} catch (ExecutionException e) {
+				throw new IOException("Unable to search: " + queryFile, e.getCause());
 			}
 		}
-		wq.finish();
 	}
 
 	/**
@@ -67,21 +102,85 @@ public class MultiQueryFileParser implements QueryInterface {
 	 */
 	@Override
 	public ArrayList<Result> searchForQueryLine(String queryLine) throws IOException {
-		wq.execute(new SearchTask(false, queryLine));
-		wq.finish();
-		ArrayList<Result> resultList = new ArrayList<>();
-		if (!this.results.values().isEmpty()) {
-			for (var element : this.results.values()) {
-				resultList.addAll(element);
+		return searchForQueryLine(queryLine, 0);
+	}
+
+	/**
+	 * take in a queryLine and parse it, keeping only the best results
+	 *
+	 * @param queryLine the queryLine to parse
+	 * @param limit     the maximum number of results, or 0 or less for all
+	 * @return an ArrayList of Result
+	 * @throws IOException
+	 */
+	@Override
+	public ArrayList<Result> searchForQueryLine(String queryLine, int limit) throws IOException {
+		try {
+			return submitQueryLine(queryLine, limit).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while searching: " + queryLine, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to search: " + queryLine, e.getCause());
+		}
+	}
+
+	/**
+	 * Start searching a queryLine on the executor. Only this search is waited
+	 * for through the returned future, and its results are not added to the
+	 * results of the query file.
+	 *
+	 * @param queryLine the queryLine to parse
+	 * @param limit     the maximum number of results, or 0 or less for all
+	 * @return the future ArrayList of Result
+	 */
+	@Override
+	public Future<ArrayList<Result>> submitQueryLine(String queryLine, int limit) {
+		return wq.submit(() -> {
+			TreeSet<String> queryWords = stem(queryLine);
+			return queryWords.isEmpty() ? new ArrayList<Result>() : new ArrayList<>(search(queryWords, false, limit));
+		});
+	}
+
+	/**
+	 * Clean, split and stem a query line
+	 *
+	 * @param query the query line
+	 * @return the sorted, unique stemmed words of the query
+	 */
+	private static TreeSet<String> stem(String query) {
+		TreeSet<String> queryWords = new TreeSet<String>();
+		new TextTokenizer().tokenize(query, (word, position) -> queryWords.add(StemCache.stemWord(word)));
+		return queryWords;
+	}
+
+	/**
+	 * Do the exact or partial search of the query words, using the cached results
+	 * if the same search was done before
+	 *
+	 * @param queryWords the stemmed words of the query
+	 * @param exact      exact search or not
+	 * @param limit      the maximum number of results, or 0 or less for all
+	 * @return the Results of the query
+	 */
+	private ArrayList<Result> search(TreeSet<String> queryWords, boolean exact, int limit) {
+		String key = QueryCache.key(queryWords, exact, limit);
+		ArrayList<Result> result = cache.get(key);
+		if (result == null) {
+			if (exact) {
+				result = map.exactSearch(queryWords, limit);
+			} else {
+				result = map.partialSearch(queryWords, limit);
 			}
-			this.results.clear();
+			cache.put(key, result);
 		}
-		return resultList;
+		return result;
 	}
 
 	private class SearchTask implements Runnable {
 		private boolean exact;
 		private String query;
+		private int limit;
 
 		/**
 		 * Verified if the user want exact search or not, and do the corresponding
@@ -89,24 +188,19 @@ public class MultiQueryFileParser implements QueryInterface {
 		 *
 		 * @param query query line
 		 * @param exact the boolean that decided if the users want to do exact search
-		 *
+		 * @param limit the maximum number of results, or 0 or less for all
 		 *
 		 */
 
-		public SearchTask(boolean exact, String query) {
+		public SearchTask(boolean exact, String query, int limit) {
 			this.exact = exact;
 			this.query = query;
+			this.limit = limit;
 		}
 
 		@Override
 		public void run() {
-			SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-			List<String> list = Arrays.asList(TextParser.parse(query));
-			TreeSet<String> queryWords = new TreeSet<String>();
-			for (String word : list) {
-				queryWords.add(stemmer.stem(word).toString());
-			}
-
+			TreeSet<String> queryWords = stem(query);
 			String queryLine = String.join(" ", queryWords);
 
 			synchronized (results) {
@@ -115,12 +209,7 @@ public class MultiQueryFileParser implements QueryInterface {
 				}
 			}
 			if (!queryWords.isEmpty()) {
-				ArrayList<Result> result;
-				if (exact) {
-					result = map.exactSearch(queryWords);
-				} else {
-					result = map.partialSearch(queryWords);
-				}
+				ArrayList<Result> result = search(queryWords, exact, limit);
 				synchronized (results) {
 					results.put(queryLine, result);
 				}
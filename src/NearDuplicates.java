@@ -0,0 +1,212 @@
+import java.util.HashMap;
+
+/**
+ * Finds pages whose text is nearly the same as a page seen before, such as
+ * mirrors and the same page under another query string.
+ *
+ * Each page is reduced to a 64-bit SimHash of the pairs of words next to each
+ * other in its text: every pair votes on every bit by its own hash, and the
+ * fingerprint keeps the bits most pairs voted for. Pages that share most of
+ * their text get fingerprints that differ in few bits, and a page is a near
+ * duplicate if its fingerprint is at most a threshold of bits away from one
+ * seen before.
+ *
+ * To avoid comparing against every page, the 64 bits are split into one band
+ * more than the threshold. Two fingerprints at most the threshold apart cannot
+ * differ in every band, so only the pages with an equal band are compared.
+ * Each band has a table from its bits to those pages. The threshold is at most
+ * {@link #MAX_THRESHOLD}, so every band has at least 16 bits and a lookup
+ * stays a few table probes and a few comparisons at millions of pages; with
+ * narrower bands each table entry would hold a large share of all pages.
+ */
+public class NearDuplicates {
+
+	/** The default number of bits two near duplicates may differ in */
+	public static final int DEFAULT_THRESHOLD = 3;
+
+	/** The largest threshold that keeps every band at least 16 bits wide */
+	public static final int MAX_THRESHOLD = 3;
+
+	/** Pages with fewer words are never near duplicates */
+	public static final int MIN_WORDS = 8;
+
+	/** Gives each thread its own tokenizer */
+	private static final ThreadLocal<TextTokenizer> TOKENIZER = ThreadLocal.withInitial(TextTokenizer::new);
+
+	private final int threshold;
+	private final int[] bandStart;
+	private final HashMap<Long, int[]>[] bands;
+
+	/** The fingerprint of every page kept, guarded by this */
+	private long[] fingerprints;
+	private int size;
+	private long suppressed;
+	private long tooShort;
+
+	/**
+	 * Initialize with no pages
+	 *
+	 * @param threshold the number of bits two near duplicates may differ in, from
+	 *                  0 to {@link #MAX_THRESHOLD}, where larger ones are capped
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public NearDuplicates(int threshold) {
+		this.threshold = Math.max(0, Math.min(threshold, MAX_THRESHOLD));
+		int count = this.threshold + 1;
+		this.bandStart = new int[count + 1];
+		for (int i = 0; i <= count; i++) {
+			bandStart[i] = i * 64 / count;
+		}
+		this.bands = new HashMap[count];
+		for (int i = 0; i < count; i++) {
+			bands[i] = new HashMap<>();
+		}
+		this.fingerprints = new long[1024];
+	}
+
+	/**
+	 * Give the SimHash of a text
+	 *
+	 * @param text the text without HTML
+	 * @return the fingerprint, or 0 only if the text has fewer than
+	 *         {@link #MIN_WORDS} words
+	 */
+	public static long simHash(CharSequence text) {
+		int[] votes = new int[64];
+		long[] previous = { 0 };
+		int words = TOKENIZER.get().tokenize(text, (token, position) -> {
+			long hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < token.length(); i++) {
+				hash ^= token.charAt(i);
+				hash *= 0x100000001b3L;
+			}
+			long pair = mix(previous[0] * 31 + hash);
+			previous[0] = hash;
+			for (int bit = 0; bit < 64; bit++) {
+				votes[bit] += (pair >>> bit & 1) == 0 ? -1 : 1;
+			}
+		});
+		if (words < MIN_WORDS) {
+			return 0;
+		}
+		long fingerprint = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			if (votes[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		return fingerprint == 0 ? 1 : fingerprint;
+	}
+
+	/**
+	 * Add a page unless it is a near duplicate of a page added before
+	 *
+	 * @param text the text of the page without HTML
+	 * @return true if the page was added, false if it is a near duplicate
+	 */
+	public boolean add(CharSequence text) {
+		return add(simHash(text));
+	}
+
+	/**
+	 * Add a page by its SimHash unless it is a near duplicate of a page added
+	 * before
+	 *
+	 * @param fingerprint the SimHash of the text of the page, from
+	 *                    {@link #simHash(CharSequence)}
+	 * @return true if the page was added, false if it is a near duplicate
+	 */
+	public boolean add(long fingerprint) {
+		synchronized (this) {
+			if (fingerprint == 0) {
+				tooShort++;
+				return true;
+			}
+			for (int band = 0; band < bands.length; band++) {
+				int[] ids = bands[band].get(band(fingerprint, band));
+				if (ids == null) {
+					continue;
+				}
+				for (int i = 1; i <= ids[0]; i++) {
+					if (Long.bitCount(fingerprints[ids[i]] ^ fingerprint) <= threshold) {
+						suppressed++;
+						return false;
+					}
+				}
+			}
+
+			if (size == fingerprints.length) {
+				long[] grown = new long[size * 2];
+				System.arraycopy(fingerprints, 0, grown, 0, size);
+				fingerprints = grown;
+			}
+			int id = size++;
+			fingerprints[id] = fingerprint;
+			for (int band = 0; band < bands.length; band++) {
+				// the first element counts the ids in the rest
+				bands[band].merge(band(fingerprint, band), new int[] { 1, id }, (ids, added) -> {
+					if (ids[0] + 1 == ids.length) {
+						int[] grown = new int[ids.length * 2];
+						System.arraycopy(ids, 0, grown, 0, ids.length);
+						ids = grown;
+					}
+					ids[++ids[0]] = added[1];
+					return ids;
+				});
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Give the number of pages found to be near duplicates
+	 *
+	 * @return the number of pages
+	 */
+	public synchronized long suppressed() {
+		return suppressed;
+	}
+
+	/**
+	 * Give the number of pages kept
+	 *
+	 * @return the number of pages
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Give the bits of one band of a fingerprint
+	 *
+	 * @param fingerprint the fingerprint
+	 * @param band        the band
+	 * @return the bits of the band
+	 */
+	private long band(long fingerprint, int band) {
+		int width = bandStart[band + 1] - bandStart[band];
+		return (fingerprint >>> bandStart[band]) & (width == 64 ? -1L : (1L << width) - 1);
+	}
+
+	/**
+	 * Spread the bits of a hash so every bit depends on every other
+	 *
+	 * @param hash the hash
+	 * @return the mixed hash
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"NearDuplicates: %d pages kept, %d near duplicates suppressed, %d too short to compare, %d bits apart in %d bands",
+				size, suppressed, tooShort, threshold, bands.length);
+	}
+}
@@ -0,0 +1,107 @@
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the pretty JSON of an index with several threads. The sorted words
+ * are split into shards of consecutive word numbers, each shard is rendered
+ * into its own buffer by the executor, and the buffers are written to the
+ * file in order with a comma between them. The output is exactly the same as
+ * {@link TreeJSONWriter#asHighNestedObject(IndexCursor, Path)}.
+ *
+ * Only a few shards per thread are rendered ahead of the one being written,
+ * so the memory used stays bounded however large the index is. The index must
+ * not change while it is written.
+ */
+public class ParallelJSONWriter {
+
+	/** The number of words in each shard */
+	public static final int SHARD_WORDS = 2048;
+
+	/** The number of shards rendered ahead for each worker thread */
+	private static final int AHEAD = 2;
+
+	/**
+	 * Writes the words, locations and positions of an index formatted as a pretty
+	 * JSON object to the specified file, using the threads of the executor.
+	 *
+	 * @param index the index to convert to JSON
+	 * @param path  the path to the file write to output
+	 * @param wq    the executor to render the shards on
+	 * @throws IOException if the writer encounters any issues
+	 */
+	public static void asHighNestedObject(IndexInterface index, Path path, WorkExecutor wq) throws IOException {
+		try (Writer writer = TreeJSONWriter.newWriter(path)) {
+			asHighNestedObject(index, writer, wq);
+		}
+	}
+
+	/**
+	 * Writes the words, locations and positions of an index as a nested pretty
+	 * JSON object using the provided writer, rendering the shards on the threads
+	 * of the executor.
+	 *
+	 * @param index  the index to convert to JSON
+	 * @param writer the writer to use
+	 * @param wq     the executor to render the shards on
+	 * @throws IOException if the writer encounters any issues
+	 */
+	public static void asHighNestedObject(IndexInterface index, Writer writer, WorkExecutor wq) throws IOException {
+		int words = index.words();
+		int shards = (words + SHARD_WORDS - 1) / SHARD_WORDS;
+		int ahead = Math.max(wq.size(), 1) * AHEAD;
+		ArrayDeque<Future<CharArrayWriter>> pending = new ArrayDeque<>();
+		int submitted = 0;
+
+		writer.write('{');
+		writer.write(System.lineSeparator());
+		try {
+			for (int shard = 0; shard < shards; shard++) {
+				while (submitted < shards && submitted - shard < ahead) {
+					pending.add(render(index, submitted++, wq));
+				}
+				if (shard > 0) {
+					writer.write(',');
+					writer.write(System.lineSeparator());
+				}
+				pending.remove().get().writeTo(writer);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the index");
+		} catch (ExecutionException e) {
+			throw new IOException("Unable to write the index", e.getCause());
+		} finally {
+			for (Future<CharArrayWriter> future : pending) {
+				future.cancel(false);
+			}
+		}
+		if (shards > 0) {
+			writer.write(System.lineSeparator());
+		}
+		writer.write('}');
+	}
+
+	/**
+	 * Start rendering one shard of words into its own buffer
+	 *
+	 * @param index the index to convert to JSON
+	 * @param shard the number of the shard
+	 * @param wq    the executor to render the shard on
+	 * @return the future buffer holding the shard
+	 */
+	private static Future<CharArrayWriter> render(IndexInterface index, int shard, WorkExecutor wq) {
+		int from = shard * SHARD_WORDS;
+		int to = from + SHARD_WORDS;
+		return wq.submit(() -> {
+			CharArrayWriter buffer = new CharArrayWriter(TreeJSONWriter.BUFFER_SIZE);
+			TreeJSONWriter.asWordEntries(index.cursor(from, to), buffer, 1);
+			return buffer;
+		});
+	}
+}
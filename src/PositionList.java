@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+/**
+ * A sorted, duplicate-free list of word positions backed by a growable
+ * primitive int array. Positions are normally appended in increasing order
+ * while a file is being indexed, so adding is an amortized constant time
+ * append; out of order positions are still accepted and inserted in place.
+ */
+public class PositionList {
+
+	/** The initial capacity of a new list */
+	private static final int DEFAULT_CAPACITY = 4;
+
+	private int[] positions;
+	private int size;
+
+	/**
+	 * Initialize an empty list
+	 */
+	public PositionList() {
+		this.positions = new int[DEFAULT_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Copy another list
+	 *
+	 * @param other the list to copy
+	 */
+	public PositionList(PositionList other) {
+		this.positions = Arrays.copyOf(other.positions, Math.max(other.size, DEFAULT_CAPACITY));
+		this.size = other.size;
+	}
+
+	/**
+	 * Make sure the backing array can hold at least this many positions
+	 *
+	 * @param capacity the capacity needed
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+		}
+	}
+
+	/**
+	 * Add a position, keeping the list sorted and ignoring duplicates
+	 *
+	 * @param position the position to add
+	 * @return true if the position was added
+	 */
+	public boolean add(int position) {
+		if (size == 0 || positions[size - 1] < position) {
+			ensureCapacity(size + 1);
+			positions[size++] = position;
+			return true;
+		}
+		int index = Arrays.binarySearch(positions, 0, size, position);
+		if (index >= 0) {
+			return false;
+		}
+		index = -(index + 1);
+		ensureCapacity(size + 1);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Merge every position of another list into this one
+	 *
+	 * @param other the list to merge
+	 */
+	public void addAll(PositionList other) {
+		if (other.size == 0) {
+			return;
+		}
+		if (size == 0 || positions[size - 1] < other.positions[0]) {
+			ensureCapacity(size + other.size);
+			System.arraycopy(other.positions, 0, positions, size, other.size);
+			size += other.size;
+			return;
+		}
+		int[] merged = new int[size + other.size];
+		int i = 0, j = 0, k = 0;
+		while (i < size && j < other.size) {
+			if (positions[i] < other.positions[j]) {
+				merged[k++] = positions[i++];
+			} else if (positions[i] > other.positions[j]) {
+				merged[k++] = other.positions[j++];
+			} else {
+				merged[k++] = positions[i++];
+				j++;
+			}
+		}
+		while (i < size) {
+			merged[k++] = positions[i++];
+		}
+		while (j < other.size) {
+			merged[k++] = other.positions[j++];
+		}
+		positions = merged;
+		size = k;
+	}
+
+	/**
+	 * Check if the position is in this list
+	 *
+	 * @param position the position to check
+	 * @return true if it's in the list, else false
+	 */
+	public boolean contains(int position) {
+		return Arrays.binarySearch(positions, 0, size, position) >= 0;
+	}
+
+	/**
+	 * Get the position at this index
+	 *
+	 * @param index the index of the position
+	 * @return the position
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return positions[index];
+	}
+
+	/**
+	 * Give the number of positions
+	 *
+	 * @return the number of positions
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if the list is empty
+	 *
+	 * @return true if there is no position
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Give the last (largest) position
+	 *
+	 * @return the last position
+	 */
+	public int last() {
+		return get(size - 1);
+	}
+
+	/**
+	 * Remove every position, keeping the capacity so the list can be reused
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Release any unused capacity once no more positions will be added
+	 */
+	public void trimToSize() {
+		if (positions.length > size) {
+			positions = Arrays.copyOf(positions, size);
+		}
+	}
+
+	/**
+	 * Copy the positions into a new array
+	 *
+	 * @return the positions in increasing order
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(positions, size);
+	}
+
+	/**
+	 * Override toString method
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(positions[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Walks the postings of one word in increasing location ID order, for search
+ * algorithms that look at one location at a time across many words.
+ */
+public interface PostingIterator {
+
+	/** The location ID given once the postings are used up */
+	public static final int NO_MORE = Integer.MAX_VALUE;
+
+	/**
+	 * Give the current location ID
+	 *
+	 * @return the current location ID, or {@link #NO_MORE} at the end
+	 */
+	public int location();
+
+	/**
+	 * Give the number of matches of the word in the current location
+	 *
+	 * @return the count of the word in the current location
+	 */
+	public int count();
+
+	/**
+	 * Move to the next location
+	 *
+	 * @return the new location ID, or {@link #NO_MORE} at the end
+	 */
+	public int next();
+
+	/**
+	 * Move to the first location with an ID greater than or equal to the target
+	 *
+	 * @param target the location ID to move to
+	 * @return the new location ID, or {@link #NO_MORE} at the end
+	 */
+	public int advance(int target);
+
+	/**
+	 * Give the highest score this word alone can add to any location, which is
+	 * the largest count divided by the total words of that location
+	 *
+	 * @return the upper bound of the score of this word
+	 */
+	public double maxScore();
+}
@@ -0,0 +1,128 @@
+import java.util.Arrays;
+
+/**
+ * The postings of one word: the ID of every location the word was found in,
+ * sorted by ID, and the positions of the word in each of those locations.
+ */
+public class Postings {
+
+	private int[] documents;
+	private PositionList[] positions;
+	private int size;
+
+	/**
+	 * Initialize an empty posting list
+	 */
+	public Postings() {
+		this.documents = new int[2];
+		this.positions = new PositionList[2];
+		this.size = 0;
+	}
+
+	/**
+	 * Find the index of this location ID
+	 *
+	 * @param document the location ID
+	 * @return the index, or (-(insertion point) - 1) if it is not found
+	 */
+	private int indexOf(int document) {
+		if (size > 0 && documents[size - 1] == document) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * Insert a location at this index
+	 *
+	 * @param index    where to insert
+	 * @param document the location ID
+	 * @param list     the positions of the word in that location
+	 */
+	private void insert(int index, int document, PositionList list) {
+		if (size == documents.length) {
+			documents = Arrays.copyOf(documents, size * 2);
+			positions = Arrays.copyOf(positions, size * 2);
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+
+	/**
+	 * Give the positions of the word in this location
+	 *
+	 * @param document the location ID
+	 * @return the positions, or null if the word is not in this location
+	 */
+	public PositionList get(int document) {
+		int index = indexOf(document);
+		return index >= 0 ? positions[index] : null;
+	}
+
+	/**
+	 * Give the positions of the word in this location, adding the location if
+	 * necessary
+	 *
+	 * @param document the location ID
+	 * @return the positions of the word in this location
+	 */
+	public PositionList getOrCreate(int document) {
+		int index = indexOf(document);
+		if (index >= 0) {
+			return positions[index];
+		}
+		PositionList list = new PositionList();
+		insert(-(index + 1), document, list);
+		return list;
+	}
+
+	/**
+	 * Add all postings of another list, translating its location IDs
+	 *
+	 * @param other the postings to add
+	 * @param remap the location ID in this index of every location ID in other
+	 */
+	public void addAll(Postings other, int[] remap) {
+		for (int i = 0; i < other.size; i++) {
+			int document = remap[other.documents[i]];
+			int index = indexOf(document);
+			if (index >= 0) {
+				positions[index].addAll(other.positions[i]);
+			} else {
+				insert(-(index + 1), document, other.positions[i]);
+			}
+		}
+	}
+
+	/**
+	 * Give the number of locations
+	 *
+	 * @return the number of locations this word was found in
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Give the location ID at this index
+	 *
+	 * @param index the index, between 0 and size() - 1
+	 * @return the location ID
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * Give the positions at this index
+	 *
+	 * @param index the index, between 0 and size() - 1
+	 * @return the positions of the word in that location
+	 */
+	public PositionList positions(int index) {
+		return positions[index];
+	}
+}
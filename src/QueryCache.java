@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of search results shared by every
+ * {@link QueryInterface} implementation. Entries are kept in least recently
+ * used order and evicted once either the number of queries or the total number
+ * of cached results goes over budget. The whole cache is dropped when the index
+ * it caches reports a new version.
+ *
+ * The cached lists are shared between callers and must not be modified.
+ */
+public class QueryCache {
+
+	/** The default maximum number of cached queries */
+	public static final int DEFAULT_ENTRIES = 1000;
+
+	/** The default maximum number of cached results over all queries */
+	public static final int DEFAULT_RESULTS = 100000;
+
+	private final IndexInterface index;
+	private final LinkedHashMap<String, ArrayList<Result>> cache;
+	private final int maxEntries;
+	private final int maxResults;
+	private long version;
+	private int results;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Initialize a cache with the default budget
+	 *
+	 * @param index the index whose results are cached
+	 */
+	public QueryCache(IndexInterface index) {
+		this(index, DEFAULT_ENTRIES, DEFAULT_RESULTS);
+	}
+
+	/**
+	 * Initialize a cache
+	 *
+	 * @param index      the index whose results are cached
+	 * @param maxEntries the maximum number of cached queries
+	 * @param maxResults the maximum number of cached results over all queries
+	 */
+	public QueryCache(IndexInterface index, int maxEntries, int maxResults) {
+		this.index = index;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true);
+		this.maxEntries = maxEntries;
+		this.maxResults = maxResults;
+		this.version = index.version();
+		this.results = 0;
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Make the cache key of a query. Two queries share a key only if they have
+	 * the same stemmed words, the same search mode and the same limit.
+	 *
+	 * @param queryWords the sorted, stemmed words of the query
+	 * @param exact      exact search or not
+	 * @param limit      the maximum number of results, or 0 or less for all
+	 * @return the key of the query
+	 */
+	public static String key(Collection<String> queryWords, boolean exact, int limit) {
+		return (exact ? "exact " : "partial ") + Math.max(limit, 0) + " " + String.join(" ", queryWords);
+	}
+
+	/**
+	 * Drop every entry if the index has changed since they were cached
+	 */
+	private void checkVersion() {
+		long current = index.version();
+		if (current != version) {
+			cache.clear();
+			results = 0;
+			version = current;
+		}
+	}
+
+	/**
+	 * Give the cached results of a query
+	 *
+	 * @param key the key of the query
+	 * @return the cached results, or null if the query is not cached
+	 */
+	public synchronized ArrayList<Result> get(String key) {
+		checkVersion();
+		ArrayList<Result> found = cache.get(key);
+		if (found == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return found;
+	}
+
+	/**
+	 * Cache the results of a query, evicting the least recently used queries
+	 * that no longer fit
+	 *
+	 * @param key   the key of the query
+	 * @param found the results of the query
+	 */
+	public synchronized void put(String key, ArrayList<Result> found) {
+		checkVersion();
+		int weight = Math.max(found.size(), 1);
+		if (weight > maxResults) {
+			return;
+		}
+		ArrayList<Result> previous = cache.put(key, found);
+		if (previous != null) {
+			results -= Math.max(previous.size(), 1);
+		}
+		results += weight;
+
+		Iterator<Map.Entry<String, ArrayList<Result>>> eldest = cache.entrySet().iterator();
+		while (cache.size() > maxEntries || results > maxResults) {
+			results -= Math.max(eldest.next().getValue().size(), 1);
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop every cached query
+	 */
+	public synchronized void invalidate() {
+		cache.clear();
+		results = 0;
+	}
+
+	/**
+	 * Give the number of cached queries
+	 *
+	 * @return the number of cached queries
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Give the number of lookups that found a cached query
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * Give the number of lookups that did not find a cached query
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Give the share of lookups that found a cached query
+	 *
+	 * @return the hit rate between 0 and 1
+	 */
+	public synchronized double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("QueryCache: %d queries, %d results, %d hits, %d misses, %.1f%% hit rate", cache.size(),
+				results, hits, misses, hitRate() * 100);
+	}
+}
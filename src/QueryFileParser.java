@@ -6,23 +6,34 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 public class QueryFileParser implements QueryInterface {
 
 	private final TreeMap<String, ArrayList<Result>> results;
-	private final InvertedMap map;
+	private final IndexInterface map;
+	private final QueryCache cache;
 
 	/**
 	 * Initialize the data structure
 	 *
-	 * @param QueryLine the query line to deal with
-	 * @param resultSet a set of result
+	 * @param map the index to search
 	 */
-	public QueryFileParser(InvertedMap map) {
+	public QueryFileParser(IndexInterface map) {
+		this(map, new QueryCache(map));
+	}
+
+	/**
+	 * Initialize the data structure
+	 *
+	 * @param map   the index to search
+	 * @param cache the cache of search results, shared with other parsers
+	 */
+	public QueryFileParser(IndexInterface map, QueryCache cache) {
 		this.results = new TreeMap<String, ArrayList<Result>>();
 		this.map = map;
+		this.cache = cache;
 	}
 
 	/**
@@ -45,16 +56,30 @@ public class QueryFileParser implements QueryInterface {
 	 */
 	@Override
 	public void searchForQuery(Path queryFile, boolean exact) throws IOException {
-		var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		searchForQuery(queryFile, exact, 0);
+	}
+
+	/**
+	 * Take in a queryFile and search it using the way exact parameter provided,
+	 * keeping only the best results of each query
+	 *
+	 * @param queryFile the queryFile to process
+	 * @param exact     exact search or not
+	 * @param limit     the maximum number of results per query, or 0 or less for
+	 *                  all
+	 * @throws IOException
+	 */
+	@Override
+	public void searchForQuery(Path queryFile, boolean exact, int limit) throws IOException {
+		var tokenizer = new TextTokenizer();
 		try (BufferedReader reader = Files.newBufferedReader(queryFile, StandardCharsets.UTF_8)) {
 			String line = "";
 			while ((line = reader.readLine()) != null) {
 				TreeSet<String> queryWords = new TreeSet<String>();
-				for (String word : TextParser.parse(line)) {
-					queryWords.add(stemmer.stem(word).toString());
-				}
-				if (!queryWords.isEmpty()) {
-					search(queryWords, exact);
+				tokenizer.tokenize(line, (word, position) -> queryWords.add(StemCache.stemWord(word)));
+				String joined = String.join(" ", queryWords);
+				if (!queryWords.isEmpty() && !results.containsKey(joined)) {
+					results.put(joined, search(queryWords, exact, limit));
 				}
 			}
 		}
@@ -69,41 +94,61 @@ public class QueryFileParser implements QueryInterface {
 	 */
 	@Override
 	public ArrayList<Result> searchForQueryLine(String query) throws IOException {
-		var stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
+		return searchForQueryLine(query, 0);
+	}
+
+	/**
+	 * take in a queryLine and parse it, keeping only the best results
+	 *
+	 * @param queryLine the queryLine to parse
+	 * @param limit     the maximum number of results, or 0 or less for all
+	 * @return an ArrayList of Result
+	 * @throws IOException
+	 */
+	@Override
+	public ArrayList<Result> searchForQueryLine(String query, int limit) throws IOException {
 		TreeSet<String> queryWords = new TreeSet<String>();
-		for (String word : TextParser.parse(query)) {
-			queryWords.add(stemmer.stem(word).toString());
-		}
-		if (!queryWords.isEmpty()) {
-			search(queryWords, false);
+		new TextTokenizer().tokenize(query, (word, position) -> queryWords.add(StemCache.stemWord(word)));
+		if (queryWords.isEmpty()) {
+			return new ArrayList<>();
 		}
-		ArrayList<Result> resultList = new ArrayList<>();
-		if (!this.results.values().isEmpty()) {
-			for (var element : this.results.values()) {
-				resultList.addAll(element);
-			}
+		return new ArrayList<>(search(queryWords, false, limit));
+	}
+
+	/**
+	 * Search a queryLine right away, since this parser has no threads
+	 *
+	 * @param query the queryLine to parse
+	 * @param limit the maximum number of results, or 0 or less for all
+	 * @return the already completed future ArrayList of Result
+	 */
+	@Override
+	public Future<ArrayList<Result>> submitQueryLine(String query, int limit) {
+		try {
+			return CompletableFuture.completedFuture(searchForQueryLine(query, limit));
+		} catch (IOException e) {
+			return CompletableFuture.failedFuture(e);
 		}
-		return resultList;
 	}
 
 	/**
 	 * Verified if the user want exact search or not, and do the corresponding
-	 * search to the ArrayList of query line
+	 * search to the ArrayList of query line, using the cached results if the
+	 * same search was done before
 	 *
 	 * @param exact the boolean that decided if the users want to do exact search
 	 * @param line  ArrayList of query line
-	 * @return A Result data structure
+	 * @param limit the maximum number of results, or 0 or less for all
+	 * @return the Results of this query line
 	 */
-	private void search(TreeSet<String> line, boolean exact) {
-		String joined = String.join(" ", line);
-		if (results.containsKey(joined)) {
-			return;
-		}
-		if (exact) {
-			this.results.put(joined, map.exactSearch(line));
-		} else {
-			this.results.put(joined, map.partialSearch(line));
+	private ArrayList<Result> search(TreeSet<String> line, boolean exact, int limit) {
+		String key = QueryCache.key(line, exact, limit);
+		ArrayList<Result> found = cache.get(key);
+		if (found == null) {
+			found = exact ? map.exactSearch(line, limit) : map.partialSearch(line, limit);
+			cache.put(key, found);
 		}
+		return found;
 	}
 
 }
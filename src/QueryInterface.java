@@ -1,6 +1,7 @@
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.concurrent.Future;
 
 public interface QueryInterface {
 
@@ -21,6 +22,18 @@ public interface QueryInterface {
 	 */
 	public void searchForQuery(Path queryFile, boolean exact) throws IOException;
 
+	/**
+	 * Take in a queryFile and search it using the way exact parameter provided,
+	 * keeping only the best results of each query
+	 *
+	 * @param queryFile the queryFile to process
+	 * @param exact     exact search or not
+	 * @param limit     the maximum number of results per query, or 0 or less for
+	 *                  all
+	 * @throws IOException
+	 */
+	public void searchForQuery(Path queryFile, boolean exact, int limit) throws IOException;
+
 	/**
 	 *
 	 * take in a String of query and stem it and return an ArrayList of Result
@@ -31,4 +44,26 @@ public interface QueryInterface {
 	 */
 	public ArrayList<Result> searchForQueryLine(String query) throws IOException;
 
+	/**
+	 *
+	 * take in a String of query and stem it and return the best Results
+	 *
+	 * @param query the queryLine to parse
+	 * @param limit the maximum number of results, or 0 or less for all
+	 * @return An ArrayList of at most limit Result, best first
+	 * @throws IOException
+	 */
+	public ArrayList<Result> searchForQueryLine(String query, int limit) throws IOException;
+
+	/**
+	 * Start searching a String of query without waiting for it. The search only
+	 * depends on this query, so it does not wait for or share results with any
+	 * other search.
+	 *
+	 * @param query the queryLine to parse
+	 * @param limit the maximum number of results, or 0 or less for all
+	 * @return the future ArrayList of at most limit Result, best first
+	 */
+	public Future<ArrayList<Result>> submitQueryLine(String query, int limit);
+
 }
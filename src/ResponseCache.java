@@ -0,0 +1,492 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps what a crawl extracted from each page on disk, so crawling the same
+ * site again only parses and stems the pages that changed.
+ *
+ * For every URL the cache remembers the ETag and Last-Modified headers and the
+ * SHA-256 hash of the body. The next fetch of the URL is a conditional GET, and
+ * on 304 Not Modified the body is not downloaded at all. Either way, a body
+ * whose hash is stored already reuses the stemmed words and the links stored
+ * under that hash instead of being scanned and stemmed again. The stored files
+ * are named by the hash, so the same page under several URLs is stored once.
+ * The {@link NearDuplicates#simHash(CharSequence)} of the text is stored too,
+ * so a reused page can still be checked for near duplicates.
+ *
+ * <pre>
+ * entries          url, hash, size, ETag and Last-Modified of each URL, by tabs
+ * objects/ab/abcd  the extraction time, SimHash, hrefs, and stems with their positions
+ * </pre>
+ */
+public class ResponseCache {
+
+	/** Identifies a stored page */
+	private static final int MAGIC = 0x52435032;
+
+	private static final String ENTRIES = "entries";
+
+	private final Path directory;
+	private final ConcurrentHashMap<String, Entry> entries;
+
+	private final LongAdder fetches;
+	private final LongAdder notModified;
+	private final LongAdder unchanged;
+	private final LongAdder stored;
+	private final LongAdder bytesSaved;
+	private final LongAdder nanosSaved;
+	private final LongAdder readNanos;
+
+	/**
+	 * Initialize an empty cache in a directory
+	 *
+	 * @param directory the directory to keep the cache in
+	 */
+	private ResponseCache(Path directory) {
+		this.directory = directory;
+		this.entries = new ConcurrentHashMap<>();
+		this.fetches = new LongAdder();
+		this.notModified = new LongAdder();
+		this.unchanged = new LongAdder();
+		this.stored = new LongAdder();
+		this.bytesSaved = new LongAdder();
+		this.nanosSaved = new LongAdder();
+		this.readNanos = new LongAdder();
+	}
+
+	/**
+	 * Open the cache in a directory, creating it if there is none
+	 *
+	 * @param directory the directory of the cache
+	 * @return the cache
+	 * @throws IOException if unable to read the cache
+	 */
+	public static ResponseCache open(Path directory) throws IOException {
+		ResponseCache cache = new ResponseCache(directory);
+		Files.createDirectories(directory.resolve("objects"));
+		Path path = directory.resolve(ENTRIES);
+		if (Files.exists(path)) {
+			try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] fields = line.split("\t", -1);
+					if (fields.length == 5) {
+						cache.entries.put(fields[0], new Entry(fields[1], Integer.parseInt(fields[2]),
+								empty(fields[3]), empty(fields[4])));
+					}
+				}
+			} catch (NumberFormatException e) {
+				throw new IOException("Not a response cache: " + directory, e);
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Write the validators and hash of every URL, replacing the saved ones
+	 *
+	 * @throws IOException if unable to write the cache
+	 */
+	public void save() throws IOException {
+		Path temporary = directory.resolve(ENTRIES + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				Entry value = entry.getValue();
+				writer.write(entry.getKey() + "\t" + value.hash + "\t" + value.size + "\t"
+						+ (value.etag == null ? "" : value.etag) + "\t"
+						+ (value.lastModified == null ? "" : value.lastModified));
+				writer.newLine();
+			}
+		}
+		Files.move(temporary, directory.resolve(ENTRIES), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Fetch a page, with a conditional GET if it was fetched before, following
+	 * redirects like {@link HTMLFetcher#fetchHTML(URL, int, KeepAliveFetcher)}.
+	 * A page that was not modified or has a stored hash is given with its stored
+	 * words and links, and any other with its HTML, to be stored with
+	 * {@link #store(Fetched, List, InvertedMap, long, long)} once extracted.
+	 *
+	 * @param url       the page to fetch
+	 * @param redirects the number of times to follow a redirect response
+	 * @param fetcher   the fetcher that keeps the connections
+	 * @return the page, or null if it is not an HTML page
+	 * @throws IOException if unable to fetch the page
+	 */
+	public Fetched fetch(URL url, int redirects, KeepAliveFetcher fetcher) throws IOException {
+		fetches.increment();
+		String key = url.toString();
+		Entry entry = entries.get(key);
+		Map<String, String> conditions = new LinkedHashMap<>();
+		if (entry != null && entry.etag != null) {
+			conditions.put("If-None-Match", entry.etag);
+		}
+		if (entry != null && entry.lastModified != null) {
+			conditions.put("If-Modified-Since", entry.lastModified);
+		}
+
+		KeepAliveFetcher.Response response = fetcher.fetch(url, conditions);
+		if (response.status() == 304 && entry != null) {
+			Fetched fetched = read(url, entry.hash);
+			if (fetched != null) {
+				notModified.increment();
+				bytesSaved.add(entry.size);
+				return fetched;
+			}
+			// the stored page is gone, so fetch the whole page again
+			entries.remove(key);
+			response = fetcher.fetch(url);
+		}
+
+		int status = response.status();
+		if (response.isHTML() && status >= 200 && status < 300) {
+			String hash = hash(response.body());
+			Fetched fetched = read(url, hash);
+			if (fetched != null) {
+				unchanged.increment();
+				entries.put(key, new Entry(hash, response.body().length, response.header("ETag"),
+						response.header("Last-Modified")));
+				return fetched;
+			}
+			return new Fetched(url, response.text(), hash, response.body().length, response.header("ETag"),
+					response.header("Last-Modified"));
+		}
+		String location = response.header("Location");
+		if (response.isRedirect() && redirects > 0 && location != null) {
+			// only the URL that was asked for is cached
+			String html = HTMLFetcher.fetchHTML(new URL(url, location), redirects - 1, fetcher);
+			return html == null ? null : new Fetched(url, html, null, 0, null, null);
+		}
+		return null;
+	}
+
+	/**
+	 * Store the words and links extracted from a page that was not reused
+	 *
+	 * @param fetched the page from {@link #fetch(URL, int, KeepAliveFetcher)}
+	 * @param hrefs   the links of the page as they are written
+	 * @param words   the stemmed words of the page
+	 * @param simHash the SimHash of the text of the page
+	 * @param nanos   the time taken to extract the words and links
+	 * @throws IOException if unable to store the page
+	 */
+	public void store(Fetched fetched, List<String> hrefs, InvertedMap words, long simHash, long nanos)
+			throws IOException {
+		if (fetched.hash == null || fetched.reused) {
+			return;
+		}
+		Path path = object(fetched.hash);
+		if (!isObject(path)) {
+			Files.createDirectories(path.getParent());
+			Path temporary = Files.createTempFile(path.getParent(), fetched.hash, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeLong(nanos);
+				out.writeLong(simHash);
+				out.writeInt(hrefs.size());
+				for (String href : hrefs) {
+					out.writeUTF(href);
+				}
+				ArrayList<String> stems = new ArrayList<>();
+				ArrayList<PositionList> positions = new ArrayList<>();
+				IndexCursor cursor = words.cursor();
+				while (cursor.nextWord()) {
+					while (cursor.nextLocation()) {
+						stems.add(cursor.word());
+						positions.add(new PositionList(cursor.positions()));
+					}
+				}
+				out.writeInt(stems.size());
+				for (int i = 0; i < stems.size(); i++) {
+					out.writeUTF(stems.get(i));
+					out.writeInt(positions.get(i).size());
+					for (int j = 0; j < positions.get(i).size(); j++) {
+						out.writeInt(positions.get(i).get(j));
+					}
+				}
+			} catch (IOException e) {
+				Files.deleteIfExists(temporary);
+				throw e;
+			}
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		entries.put(fetched.url.toString(),
+				new Entry(fetched.hash, fetched.size, fetched.etag, fetched.lastModified));
+		stored.increment();
+	}
+
+	/**
+	 * Read the words and links stored under a hash
+	 *
+	 * @param url  the page they are read for
+	 * @param hash the hash of the body of the page
+	 * @return the page, or null if nothing is stored under the hash
+	 * @throws IOException if unable to read the stored page
+	 */
+	private Fetched read(URL url, String hash) throws IOException {
+		long start = System.nanoTime();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(object(hash))))) {
+			if (in.readInt() != MAGIC) {
+				return null;
+			}
+			long nanos = in.readLong();
+			long simHash = in.readLong();
+			String[] hrefs = new String[in.readInt()];
+			for (int i = 0; i < hrefs.length; i++) {
+				hrefs[i] = in.readUTF();
+			}
+			String[] stems = new String[in.readInt()];
+			int[][] positions = new int[stems.length][];
+			for (int i = 0; i < stems.length; i++) {
+				stems[i] = in.readUTF();
+				positions[i] = new int[in.readInt()];
+				for (int j = 0; j < positions[i].length; j++) {
+					positions[i][j] = in.readInt();
+				}
+			}
+			nanosSaved.add(nanos);
+			return new Fetched(url, List.of(hrefs), stems, positions, simHash);
+		} catch (NoSuchFileException e) {
+			return null;
+		} finally {
+			readNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Check if a file holds a page stored in the current layout
+	 *
+	 * @param path the file
+	 * @return true if the file starts with the current magic number
+	 * @throws IOException if unable to read the file
+	 */
+	private static boolean isObject(Path path) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+			return in.readInt() == MAGIC;
+		} catch (NoSuchFileException | EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Give the file a page is stored in
+	 *
+	 * @param hash the hash of the body of the page
+	 * @return the path of the file
+	 */
+	private Path object(String hash) {
+		return directory.resolve("objects").resolve(hash.substring(0, 2)).resolve(hash);
+	}
+
+	/**
+	 * Give the SHA-256 hash of a body
+	 *
+	 * @param body the body
+	 * @return the hash in hexadecimal
+	 */
+	private static String hash(byte[] body) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read an empty field of the entries as no header
+	 *
+	 * @param field the field
+	 * @return the field, or null if it is empty
+	 */
+	private static String empty(String field) {
+		return field.isEmpty() ? null : field;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"ResponseCache: %d fetches, %d not modified, %d unchanged, %d stored, %d KiB not downloaded, %.1f ms of scanning and stemming saved for %.1f ms of reading",
+				fetches.sum(), notModified.sum(), unchanged.sum(), stored.sum(), bytesSaved.sum() / 1024,
+				nanosSaved.sum() / 1e6, readNanos.sum() / 1e6);
+	}
+
+	/**
+	 * The validators and hash of a URL
+	 */
+	private static class Entry {
+
+		private final String hash;
+		private final int size;
+		private final String etag;
+		private final String lastModified;
+
+		/**
+		 * Initialize an entry
+		 *
+		 * @param hash         the hash of the body
+		 * @param size         the size of the body
+		 * @param etag         the ETag header, or null
+		 * @param lastModified the Last-Modified header, or null
+		 */
+		private Entry(String hash, int size, String etag, String lastModified) {
+			this.hash = hash;
+			this.size = size;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A fetched page: either its HTML, or the words and links stored for it
+	 */
+	public static class Fetched {
+
+		private final URL url;
+		private final String html;
+		private final String hash;
+		private final int size;
+		private final String etag;
+		private final String lastModified;
+
+		private final boolean reused;
+		private final List<String> hrefs;
+		private final String[] stems;
+		private final int[][] positions;
+		private final long simHash;
+
+		/**
+		 * Initialize a page that has to be scanned and stemmed
+		 *
+		 * @param url          the page
+		 * @param html         the HTML of the page
+		 * @param hash         the hash of the body, or null if it is not cached
+		 * @param size         the size of the body
+		 * @param etag         the ETag header, or null
+		 * @param lastModified the Last-Modified header, or null
+		 */
+		private Fetched(URL url, String html, String hash, int size, String etag, String lastModified) {
+			this.url = url;
+			this.html = html;
+			this.hash = hash;
+			this.size = size;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.reused = false;
+			this.hrefs = Collections.emptyList();
+			this.stems = null;
+			this.positions = null;
+			this.simHash = 0;
+		}
+
+		/**
+		 * Initialize a page with stored words and links
+		 *
+		 * @param url       the page
+		 * @param hrefs     the links of the page as they are written
+		 * @param stems     the stemmed words of the page
+		 * @param positions the positions of each stem
+		 * @param simHash   the SimHash of the text of the page
+		 */
+		private Fetched(URL url, List<String> hrefs, String[] stems, int[][] positions, long simHash) {
+			this.url = url;
+			this.html = null;
+			this.hash = null;
+			this.size = 0;
+			this.etag = null;
+			this.lastModified = null;
+			this.reused = true;
+			this.hrefs = hrefs;
+			this.stems = stems;
+			this.positions = positions;
+			this.simHash = simHash;
+		}
+
+		/**
+		 * Give the stored SimHash of a reused page
+		 *
+		 * @return the SimHash of the text of the page
+		 */
+		public long simHash() {
+			return simHash;
+		}
+
+		/**
+		 * Check if the stored words and links are reused
+		 *
+		 * @return true if the page does not need to be scanned and stemmed
+		 */
+		public boolean reused() {
+			return reused;
+		}
+
+		/**
+		 * Give the HTML of a page that was not reused
+		 *
+		 * @return the HTML, or null if the page was reused
+		 */
+		public String html() {
+			return html;
+		}
+
+		/**
+		 * Give the stored links of a reused page
+		 *
+		 * @param base the URL of the page
+		 * @return the cleaned links of the page, in the order they appear
+		 * @throws MalformedURLException if a link is not a valid URL
+		 */
+		public ArrayList<URL> links(URL base) throws MalformedURLException {
+			ArrayList<URL> links = new ArrayList<>(hrefs.size());
+			for (String href : hrefs) {
+				URL link = LinkParser.resolve(base, href);
+				if (link != null) {
+					links.add(link);
+				}
+			}
+			return links;
+		}
+
+		/**
+		 * Give the stored words of a reused page
+		 *
+		 * @param location the location to add the words at
+		 * @return the words of the page
+		 */
+		public InvertedMap words(String location) {
+			InvertedMap words = new InvertedMap();
+			for (int i = 0; i < stems.length; i++) {
+				for (int position : positions[i]) {
+					words.add(stems[i], location, position);
+				}
+			}
+			return words;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best results offered to it, up to a limit, in a bounded heap with
+ * the worst kept result on top. Results are ranked with
+ * {@link Result#compareTo(Result)}, so the kept results are exactly the first
+ * results of a full sort, found without sorting everything.
+ */
+public class ResultHeap {
+
+	private final PriorityQueue<Result> heap;
+	private final int limit;
+
+	/**
+	 * Initialize an empty heap
+	 *
+	 * @param limit the maximum number of results to keep, at least 1
+	 */
+	public ResultHeap(int limit) {
+		this.heap = new PriorityQueue<Result>(limit, Collections.reverseOrder());
+		this.limit = limit;
+	}
+
+	/**
+	 * Offer a result, keeping it if it is one of the best so far
+	 *
+	 * @param result the result to offer
+	 * @return true if the result was kept
+	 */
+	public boolean offer(Result result) {
+		if (heap.size() < limit) {
+			heap.add(result);
+			return true;
+		}
+		if (result.compareTo(heap.peek()) < 0) {
+			heap.poll();
+			heap.add(result);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check if the heap holds as many results as its limit
+	 *
+	 * @return true if the heap is full
+	 */
+	public boolean isFull() {
+		return heap.size() >= limit;
+	}
+
+	/**
+	 * Give the worst result kept so far
+	 *
+	 * @return the worst kept result, or null if the heap is empty
+	 */
+	public Result worst() {
+		return heap.peek();
+	}
+
+	/**
+	 * Give the kept results from best to worst
+	 *
+	 * @return the sorted results
+	 */
+	public ArrayList<Result> toSortedList() {
+		ArrayList<Result> results = new ArrayList<>(heap);
+		Collections.sort(results);
+		return results;
+	}
+
+	/**
+	 * Give the best results of a collection in sorted order
+	 *
+	 * @param results the results to choose from
+	 * @param limit   the maximum number of results, or 0 or less for all of them
+	 * @return the best results from best to worst
+	 */
+	public static ArrayList<Result> top(Collection<Result> results, int limit) {
+		if (limit <= 0 || limit >= results.size()) {
+			ArrayList<Result> sorted = new ArrayList<>(results);
+			Collections.sort(sorted);
+			return sorted;
+		}
+		ResultHeap heap = new ResultHeap(limit);
+		for (Result result : results) {
+			heap.offer(result);
+		}
+		return heap.toSortedList();
+	}
+}
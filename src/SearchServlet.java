@@ -24,14 +24,17 @@ public class SearchServlet extends HttpServlet {
 	private static final String TITLE = "Search Engine";
 	private static Logger log = Log.getRootLogger();
 	private QueryInterface queryParser;
+	private QueryCache cache;
 	public static final String LAST_VISIT = "Visited";
 	public static final String VISIT_COUNT = "Count";
 	public static final String QUERY_HISTORY = "Queries";
 	public static final String SEPARATOR = "@@@";
+	public static final int MAX_RESULTS = 10;
 
-	public SearchServlet(QueryInterface queryParser) {
+	public SearchServlet(QueryInterface queryParser, QueryCache cache) {
 		super();
 		this.queryParser = queryParser;
+		this.cache = cache;
 	}
 
 	@Override
@@ -119,7 +122,11 @@ public class SearchServlet extends HttpServlet {
 		query = StringEscapeUtils.escapeHtml4(query);
 		ArrayList<Result> resultList = new ArrayList<>();
 		ArrayList<String> output = new ArrayList<>();
-		resultList = queryParser.searchForQueryLine(query);
+		resultList = queryParser.searchForQueryLine(query, MAX_RESULTS);
+		if (log.isDebugEnabled()) {
+			log.debug(cache.toString());
+			log.debug(StemCache.shared().toString());
+		}
 
 		for (Result result : resultList) {
 			output.add(result.where());
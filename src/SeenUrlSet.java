@@ -0,0 +1,298 @@
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A compact, thread-safe set of the URLs a crawl has claimed. Each URL is
+ * reduced to a canonical string and then to a 64-bit fingerprint, so a URL
+ * costs about 16 bytes instead of a {@link URL} object in a hash set, and no
+ * lookup ever resolves a host name the way {@link URL#equals(Object)} can.
+ *
+ * The fingerprints are split over stripes, each an open addressing table with
+ * its own lock, so threads claiming links of different stripes do not wait for
+ * each other. A Bloom filter can be put in front of the tables: a URL it has
+ * never seen skips the table lookup, and {@link #contains(URL)} answers most
+ * new URLs without locking. Two different URLs with the same fingerprint are
+ * treated as the same, which for a 64-bit fingerprint is unlikely even for a
+ * few million URLs.
+ */
+public class SeenUrlSet {
+
+	/** The default number of stripes */
+	public static final int DEFAULT_STRIPES = 64;
+
+	/** The number of bits of the Bloom filter for each expected URL */
+	private static final int BLOOM_BITS = 10;
+
+	/** The number of bits set in the Bloom filter for each URL */
+	private static final int BLOOM_HASHES = 7;
+
+	private final Stripe[] stripes;
+	private final AtomicInteger size;
+	private final AtomicLongArray bloom;
+	private final long bloomBits;
+
+	/**
+	 * Initialize an empty set with the default number of stripes and no Bloom
+	 * filter
+	 */
+	public SeenUrlSet() {
+		this(DEFAULT_STRIPES, 0);
+	}
+
+	/**
+	 * Initialize an empty set
+	 *
+	 * @param stripes  the number of stripes, rounded up to a power of two
+	 * @param expected the number of URLs to size a Bloom filter for, or 0 for no
+	 *                 Bloom filter
+	 */
+	public SeenUrlSet(int stripes, int expected) {
+		int count = Integer.highestOneBit(Math.max(stripes, 1) * 2 - 1);
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		this.size = new AtomicInteger();
+		if (expected > 0) {
+			int words = (int) Math.min(((long) expected * BLOOM_BITS + 63) / 64, Integer.MAX_VALUE);
+			this.bloom = new AtomicLongArray(words);
+			this.bloomBits = (long) words * 64;
+		} else {
+			this.bloom = null;
+			this.bloomBits = 0;
+		}
+	}
+
+	/**
+	 * Give the canonical form of a URL: the protocol and host in lower case, the
+	 * port even if it is the default one, the path or "/" if there is none, and
+	 * the query. The fragment is left out.
+	 *
+	 * @param url the URL
+	 * @return the canonical form
+	 */
+	public static String canonical(URL url) {
+		StringBuilder key = new StringBuilder(url.toString().length() + 8);
+		key.append(url.getProtocol().toLowerCase(Locale.ROOT)).append("://");
+		key.append(url.getHost().toLowerCase(Locale.ROOT));
+		key.append(':').append(url.getPort() < 0 ? url.getDefaultPort() : url.getPort());
+		String path = url.getPath();
+		key.append(path.isEmpty() ? "/" : path);
+		if (url.getQuery() != null) {
+			key.append('?').append(url.getQuery());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Give the 64-bit fingerprint of a canonical URL, never 0
+	 *
+	 * @param canonical the canonical form of the URL
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(String canonical) {
+		// FNV-1a over the UTF-8 bytes, then mixed so every bit depends on every byte
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : canonical.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Add a URL if it was not seen before
+	 *
+	 * @param url the URL
+	 * @return true if the URL was not seen before
+	 */
+	public boolean add(URL url) {
+		return add(url, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Add a URL if it was not seen before and the set holds fewer than a limit of
+	 * URLs. The limit is never passed, however many threads add at once.
+	 *
+	 * @param url   the URL
+	 * @param limit the most URLs the set may hold
+	 * @return true if the URL was added
+	 */
+	public boolean add(URL url, int limit) {
+		if (size.get() >= limit) {
+			return false;
+		}
+		long fingerprint = fingerprint(canonical(url));
+		Stripe stripe = stripes[(int) (fingerprint >>> 32) & (stripes.length - 1)];
+		synchronized (stripe) {
+			// a fingerprint is only added to the filter while holding its stripe
+			if ((bloom == null || mightContain(fingerprint)) && stripe.contains(fingerprint)) {
+				return false;
+			}
+			int count;
+			do {
+				count = size.get();
+				if (count >= limit) {
+					return false;
+				}
+			} while (!size.compareAndSet(count, count + 1));
+			stripe.add(fingerprint);
+			if (bloom != null) {
+				remember(fingerprint);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a URL was seen before
+	 *
+	 * @param url the URL
+	 * @return true if the URL was added before
+	 */
+	public boolean contains(URL url) {
+		long fingerprint = fingerprint(canonical(url));
+		if (bloom != null && !mightContain(fingerprint)) {
+			return false;
+		}
+		Stripe stripe = stripes[(int) (fingerprint >>> 32) & (stripes.length - 1)];
+		synchronized (stripe) {
+			return stripe.contains(fingerprint);
+		}
+	}
+
+	/**
+	 * Give the number of URLs seen
+	 *
+	 * @return the number of URLs
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Check the Bloom filter for a fingerprint
+	 *
+	 * @param fingerprint the fingerprint
+	 * @return false if the fingerprint was certainly never added
+	 */
+	private boolean mightContain(long fingerprint) {
+		long h1 = fingerprint;
+		long h2 = (fingerprint >>> 17) | (fingerprint << 47);
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			long bit = Math.floorMod(h1 + i * h2, bloomBits);
+			if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Set the bits of a fingerprint in the Bloom filter
+	 *
+	 * @param fingerprint the fingerprint
+	 */
+	private void remember(long fingerprint) {
+		long h1 = fingerprint;
+		long h2 = (fingerprint >>> 17) | (fingerprint << 47);
+		for (int i = 0; i < BLOOM_HASHES; i++) {
+			long bit = Math.floorMod(h1 + i * h2, bloomBits);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long old;
+			while (((old = bloom.get(word)) & mask) == 0 && !bloom.compareAndSet(word, old, old | mask)) {
+				// another thread set a bit of the same word, try again
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		long slots = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				slots += stripe.table.length;
+			}
+		}
+		long bytes = slots * 8 + bloomBits / 8;
+		return String.format("SeenUrlSet: %d urls in %d stripes, %d KiB%s", size(), stripes.length, bytes / 1024,
+				bloom == null ? "" : " with a Bloom filter");
+	}
+
+	/**
+	 * An open addressing table of fingerprints, only used while holding its
+	 * monitor
+	 */
+	private static class Stripe {
+
+		private long[] table;
+		private int used;
+
+		/**
+		 * Initialize an empty table
+		 */
+		private Stripe() {
+			this.table = new long[16];
+			this.used = 0;
+		}
+
+		/**
+		 * Check if a fingerprint is in the table
+		 *
+		 * @param fingerprint the fingerprint, never 0
+		 * @return true if it is in the table
+		 */
+		private boolean contains(long fingerprint) {
+			int mask = table.length - 1;
+			for (int i = (int) fingerprint & mask; table[i] != 0; i = (i + 1) & mask) {
+				if (table[i] == fingerprint) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Add a fingerprint that is not in the table, growing it once it is two
+		 * thirds full
+		 *
+		 * @param fingerprint the fingerprint, never 0
+		 */
+		private void add(long fingerprint) {
+			if ((used + 1) * 3 > table.length * 2) {
+				long[] old = table;
+				table = new long[old.length * 2];
+				for (long value : old) {
+					if (value != 0) {
+						insert(value);
+					}
+				}
+			}
+			insert(fingerprint);
+			used++;
+		}
+
+		/**
+		 * Put a fingerprint in the first free slot of its probe sequence
+		 *
+		 * @param fingerprint the fingerprint
+		 */
+		private void insert(long fingerprint) {
+			int mask = table.length - 1;
+			int i = (int) fingerprint & mask;
+			while (table[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			table[i] = fingerprint;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * A bounded, thread-safe cache from a cleaned word to its English stem, shared
+ * by everything that builds or searches the index. Each thread reuses its own
+ * {@link SnowballStemmer}, since a stemmer is not thread safe. Once the cache
+ * is full new words are still stemmed but no longer cached, so the words seen
+ * first (normally the most common ones) stay cached.
+ */
+public class StemCache {
+
+	/** The default maximum number of cached words */
+	public static final int DEFAULT_ENTRIES = 100000;
+
+	/** The cache shared by the builders, the crawler and the query parsers */
+	private static final StemCache SHARED = new StemCache(DEFAULT_ENTRIES);
+
+	private static final ThreadLocal<SnowballStemmer> STEMMER = ThreadLocal
+			.withInitial(() -> new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH));
+
+	private final ConcurrentHashMap<String, String> stems;
+	private volatile int maxEntries;
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+	/**
+	 * Initialize a cache
+	 *
+	 * @param maxEntries the maximum number of cached words
+	 */
+	public StemCache(int maxEntries) {
+		this.stems = new ConcurrentHashMap<>();
+		this.maxEntries = maxEntries;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * Give the shared cache
+	 *
+	 * @return the cache shared by every stemming call site
+	 */
+	public static StemCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Stem a word with the shared cache
+	 *
+	 * @param word the cleaned word to stem
+	 * @return the stem of the word
+	 */
+	public static String stemWord(CharSequence word) {
+		return SHARED.stem(word);
+	}
+
+	/**
+	 * Stem a word, using the cached stem if this word was seen before
+	 *
+	 * @param word the cleaned word to stem
+	 * @return the stem of the word
+	 */
+	public String stem(CharSequence word) {
+		String key = word.toString();
+		String stem = stems.get(key);
+		if (stem != null) {
+			hits.increment();
+			return stem;
+		}
+		misses.increment();
+		stem = STEMMER.get().stem(key).toString();
+		if (stems.size() < maxEntries) {
+			String previous = stems.putIfAbsent(key, stem);
+			if (previous != null) {
+				stem = previous;
+			}
+		}
+		return stem;
+	}
+
+	/**
+	 * Change the maximum number of cached words. Words already cached are kept.
+	 *
+	 * @param maxEntries the maximum number of cached words
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Remove every cached word and reset the statistics
+	 */
+	public void clear() {
+		stems.clear();
+		hits.reset();
+		misses.reset();
+	}
+
+	/**
+	 * Give the number of cached words
+	 *
+	 * @return the number of cached words
+	 */
+	public int size() {
+		return stems.size();
+	}
+
+	/**
+	 * Give the number of words found in the cache
+	 *
+	 * @return the number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Give the number of words that had to be stemmed
+	 *
+	 * @return the number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Give the fraction of words found in the cache
+	 *
+	 * @return the hit rate between 0 and 1
+	 */
+	public double hitRate() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("StemCache: %d words of %d, %d hits, %d misses, %.1f%% hit rate", size(), maxEntries,
+				hits(), misses(), hitRate() * 100);
+	}
+}
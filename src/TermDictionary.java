@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Maps every word of an inverted index to a dense int ID. The words are kept
+ * sorted so prefix lookups and JSON output still see them in order.
+ */
+public class TermDictionary {
+
+	private final TreeMap<String, Integer> ids;
+	private final ArrayList<String> terms;
+	private volatile int[] order;
+
+	/**
+	 * Initialize an empty dictionary
+	 */
+	public TermDictionary() {
+		this.ids = new TreeMap<>();
+		this.terms = new ArrayList<>();
+	}
+
+	/**
+	 * Give the ID of this word
+	 *
+	 * @param term the word to look up
+	 * @return the ID of the word, or -1 if it is not in the dictionary
+	 */
+	public int id(String term) {
+		Integer id = ids.get(term);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Give the ID of this word, adding it to the dictionary if necessary
+	 *
+	 * @param term the word to look up or add
+	 * @return the ID of the word
+	 */
+	public int intern(String term) {
+		Integer id = ids.get(term);
+		if (id != null) {
+			return id;
+		}
+		int next = terms.size();
+		ids.put(term, next);
+		terms.add(term);
+		order = null;
+		return next;
+	}
+
+	/**
+	 * Give the word with this ID
+	 *
+	 * @param id the ID of the word
+	 * @return the word
+	 */
+	public String term(int id) {
+		return terms.get(id);
+	}
+
+	/**
+	 * Give the number of words in the dictionary
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * Give a read-only sorted view of the words, and their IDs, that are greater
+	 * than or equal to this word
+	 *
+	 * @param term the first word of the view
+	 * @return the words from this word on, in sorted order
+	 */
+	public SortedMap<String, Integer> tailMap(String term) {
+		return Collections.unmodifiableSortedMap(ids.tailMap(term));
+	}
+
+	/**
+	 * Give a read-only sorted view of the words, and their IDs, from one word up
+	 * to another
+	 *
+	 * @param from the first word of the view, inclusive, or null for the first
+	 *             word
+	 * @param to   the last word of the view, exclusive, or null for no last word
+	 * @return the words in the range, in sorted order
+	 */
+	public SortedMap<String, Integer> range(String from, String to) {
+		SortedMap<String, Integer> range;
+		if (from == null) {
+			range = to == null ? ids : ids.headMap(to);
+		} else {
+			range = to == null ? ids.tailMap(from) : ids.subMap(from, to);
+		}
+		return Collections.unmodifiableSortedMap(range);
+	}
+
+	/**
+	 * Give a read-only sorted view of all the words and their IDs
+	 *
+	 * @return every word in sorted order
+	 */
+	public SortedMap<String, Integer> sorted() {
+		return Collections.unmodifiableSortedMap(ids);
+	}
+
+	/**
+	 * Give the IDs of all the words in sorted word order, so a range of sorted
+	 * words can be found by number. The array is built once and kept until a new
+	 * word is added.
+	 *
+	 * @return the word IDs in sorted word order, must not be modified
+	 */
+	public int[] sortedIds() {
+		int[] sorted = order;
+		if (sorted == null) {
+			sorted = new int[ids.size()];
+			int i = 0;
+			for (Integer id : ids.values()) {
+				sorted[i++] = id;
+			}
+			order = sorted;
+		}
+		return sorted;
+	}
+}
@@ -0,0 +1,165 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A compact, read-only prefix index over a sorted array of words. Every node of
+ * the trie stands for a prefix and stores the range of word IDs that start with
+ * that prefix, so all words for a prefix are found by walking the prefix once
+ * and then reading the range, without comparing any of the words in it.
+ *
+ * Nodes are only kept for the first {@link #DEPTH} characters of each word.
+ * Longer prefixes use the range of the deepest node and a binary search inside
+ * it, which keeps the trie small while still giving ranges in time
+ * proportional to the prefix length and the number of words found.
+ *
+ * Each node is stored as five ints in breadth-first order so the children of a
+ * node are next to each other: the character, the first child, the number of
+ * children, and the first and last + 1 word ID of the prefix.
+ */
+public class TermTrie {
+
+	/** The longest prefix that has its own node */
+	public static final int DEPTH = 6;
+
+	/** The bytes used by one node */
+	private static final int NODE = 20;
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private final IntFunction<String> words;
+
+	/**
+	 * Open a trie stored in a buffer
+	 *
+	 * @param buffer the buffer holding the trie
+	 * @param offset where the trie starts
+	 * @param words  gives the word with an ID, for prefixes longer than the trie
+	 */
+	public TermTrie(ByteBuffer buffer, int offset, IntFunction<String> words) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.words = words;
+	}
+
+	/**
+	 * Build the trie of a sorted list of words
+	 *
+	 * @param sorted the words, sorted and without duplicates
+	 * @return the nodes of the trie, in the layout read by this class
+	 */
+	public static byte[] build(List<String> sorted) {
+		// node: character, first child, children, low, high
+		ArrayList<int[]> nodes = new ArrayList<>();
+		nodes.add(new int[] { 0, 0, 0, 0, sorted.size() });
+		ArrayDeque<int[]> queue = new ArrayDeque<>();
+		queue.add(new int[] { 0, 0 }); // node, depth
+
+		while (!queue.isEmpty()) {
+			int[] next = queue.poll();
+			int[] node = nodes.get(next[0]);
+			int depth = next[1];
+			if (depth == DEPTH) {
+				continue;
+			}
+			node[1] = nodes.size();
+			int low = node[3];
+			// the word equal to the prefix itself comes first and has no child
+			while (low < node[4] && sorted.get(low).length() == depth) {
+				low++;
+			}
+			while (low < node[4]) {
+				char c = sorted.get(low).charAt(depth);
+				int high = low + 1;
+				while (high < node[4] && sorted.get(high).charAt(depth) == c) {
+					high++;
+				}
+				queue.add(new int[] { nodes.size(), depth + 1 });
+				nodes.add(new int[] { c, 0, 0, low, high });
+				node[2]++;
+				low = high;
+			}
+		}
+
+		ByteBuffer bytes = ByteBuffer.allocate(nodes.size() * NODE);
+		for (int[] node : nodes) {
+			for (int value : node) {
+				bytes.putInt(value);
+			}
+		}
+		return bytes.array();
+	}
+
+	/**
+	 * Give a field of a node
+	 *
+	 * @param node  the node index
+	 * @param field the field, from 0 to 4
+	 * @return the value of the field
+	 */
+	private int field(int node, int field) {
+		return buffer.getInt(offset + node * NODE + field * 4);
+	}
+
+	/**
+	 * Find the child of a node for this character
+	 *
+	 * @param node the parent node
+	 * @param c    the character
+	 * @return the child node, or -1 if there is none
+	 */
+	private int child(int node, char c) {
+		int low = field(node, 1);
+		int high = low + field(node, 2) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int label = field(middle, 0);
+			if (label < c) {
+				low = middle + 1;
+			} else if (label > c) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the range of word IDs that start with this prefix
+	 *
+	 * @param prefix the prefix to look for
+	 * @return the first word ID and the last word ID + 1, equal if none match
+	 */
+	public int[] range(String prefix) {
+		int node = 0;
+		int depth = Math.min(prefix.length(), DEPTH);
+		for (int i = 0; i < depth; i++) {
+			node = child(node, prefix.charAt(i));
+			if (node < 0) {
+				return new int[] { 0, 0 };
+			}
+		}
+		int low = field(node, 3);
+		int high = field(node, 4);
+		if (prefix.length() > DEPTH) {
+			// narrow the range of the deepest node with a binary search
+			int end = high;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (words.apply(middle).compareTo(prefix) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			high = low;
+			while (high < end && words.apply(high).startsWith(prefix)) {
+				high++;
+			}
+		}
+		return new int[] { low, high };
+	}
+}
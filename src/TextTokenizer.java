@@ -0,0 +1,166 @@
+import java.util.Locale;
+
+/**
+ * A single pass tokenizer that gives exactly the same words as
+ * {@link TextParser#parse(String)}, without building the normalized, cleaned
+ * and split copies of every line. Each word is handed to a {@link TokenSink}
+ * as a reused character view, so nothing is allocated per word unless the sink
+ * keeps it.
+ *
+ * Plain ASCII text takes the fast path: letters are lowercased into the
+ * buffer, the ASCII white space characters end a word, and everything else is
+ * dropped. Any other text, or a default locale with its own lowercase rules
+ * for ASCII letters, goes through {@link TextParser#parse(String)} instead.
+ * Not thread safe; use one tokenizer per thread.
+ */
+public class TextTokenizer {
+
+	/**
+	 * Receives the words of a text in order
+	 */
+	@FunctionalInterface
+	public interface TokenSink {
+
+		/**
+		 * Accept one word. The word is only valid during this call; use
+		 * {@link CharSequence#toString()} to keep it.
+		 *
+		 * @param token    the cleaned, lowercased word
+		 * @param position the position of the word
+		 */
+		void accept(CharSequence token, int position);
+	}
+
+	/** If the default locale lowercases ASCII letters the usual way */
+	private static final boolean ASCII_LOWERCASE = asciiLowercase(Locale.getDefault());
+
+	private char[] buffer;
+	private int length;
+	private final Token token;
+
+	/**
+	 * Initialize a tokenizer
+	 */
+	public TextTokenizer() {
+		this.buffer = new char[32];
+		this.length = 0;
+		this.token = new Token();
+	}
+
+	/**
+	 * Check if this locale lowercases ASCII letters to ASCII letters
+	 *
+	 * @param locale the locale to check
+	 * @return false for the Turkish and Azerbaijani dotless i rules
+	 */
+	private static boolean asciiLowercase(Locale locale) {
+		String language = locale.getLanguage();
+		return !language.equals("tr") && !language.equals("az");
+	}
+
+	/**
+	 * Give every word of the text to the sink, numbering them from the start
+	 * position
+	 *
+	 * @param text  the text to clean and split
+	 * @param start the position of the first word
+	 * @param sink  the sink to give the words to
+	 * @return the position after the last word
+	 */
+	public int tokenize(CharSequence text, int start, TokenSink sink) {
+		if (!ASCII_LOWERCASE || !isAscii(text)) {
+			for (String word : TextParser.parse(text.toString())) {
+				sink.accept(word, start++);
+			}
+			return start;
+		}
+		length = 0;
+		for (int i = 0, n = text.length(); i < n; i++) {
+			char c = text.charAt(i);
+			if (c >= 'a' && c <= 'z') {
+				append(c);
+			} else if (c >= 'A' && c <= 'Z') {
+				append((char) (c + ('a' - 'A')));
+			} else if (c == ' ' || (c >= '\t' && c <= '\r')) {
+				if (length > 0) {
+					sink.accept(token, start++);
+					length = 0;
+				}
+			}
+		}
+		if (length > 0) {
+			sink.accept(token, start++);
+			length = 0;
+		}
+		return start;
+	}
+
+	/**
+	 * Give every word of the text to the sink, numbering them from 1
+	 *
+	 * @param text the text to clean and split
+	 * @param sink the sink to give the words to
+	 * @return the number of words
+	 */
+	public int tokenize(CharSequence text, TokenSink sink) {
+		return tokenize(text, 1, sink) - 1;
+	}
+
+	/**
+	 * Check if every character of the text is ASCII
+	 *
+	 * @param text the text to check
+	 * @return true if there is no character above 0x7F
+	 */
+	private static boolean isAscii(CharSequence text) {
+		for (int i = 0, n = text.length(); i < n; i++) {
+			if (text.charAt(i) > 0x7F) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add a character to the current word
+	 *
+	 * @param c the character to add
+	 */
+	private void append(char c) {
+		if (length == buffer.length) {
+			char[] grown = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, length);
+			buffer = grown;
+		}
+		buffer[length++] = c;
+	}
+
+	/**
+	 * A view of the current word in the buffer
+	 */
+	private class Token implements CharSequence {
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			return buffer[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(buffer, 0, length).substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return new String(buffer, 0, length);
+		}
+	}
+}
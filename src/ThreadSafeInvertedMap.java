@@ -5,14 +5,23 @@ import java.util.Collection;
 
 public class ThreadSafeInvertedMap extends InvertedMap {
 
-	private final ReadWriteLock lock;
+	private final InstrumentedReadWriteLock lock;
 
 	/**
 	 * This is a thread safe version of InvertedMap class
 	 */
 	public ThreadSafeInvertedMap() {
 		super();
-		lock = new ReadWriteLock();
+		lock = new InstrumentedReadWriteLock();
+	}
+
+	/**
+	 * Give the wait and hold times of the lock
+	 *
+	 * @return the lock statistics
+	 */
+	public String lockStatistics() {
+		return lock.toString();
 	}
 
 	@Override
@@ -45,6 +54,26 @@ public class ThreadSafeInvertedMap extends InvertedMap {
 		}
 	}
 
+	@Override
+	public long version() {
+		lock.lockReadOnly();
+		try {
+			return super.version();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
+	@Override
+	public IndexSnapshot freeze() {
+		lock.lockReadOnly();
+		try {
+			return super.freeze();
+		} finally {
+			lock.unlockReadOnly();
+		}
+	}
+
 	@Override
 	public String toString() {
 		lock.lockReadOnly();
@@ -109,6 +138,13 @@ public class ThreadSafeInvertedMap extends InvertedMap {
 
 	@Override
 	public int words() {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			int words = super.words();
+			if (lock.validate(stamp)) {
+				return words;
+			}
+		}
 		lock.lockReadOnly();
 		try {
 			return super.words();
@@ -139,20 +175,20 @@ public class ThreadSafeInvertedMap extends InvertedMap {
 	}
 
 	@Override
-	public ArrayList<Result> partialSearch(Collection<String> line) {
+	public ArrayList<Result> partialSearch(Collection<String> line, int limit) {
 		lock.lockReadOnly();
 		try {
-			return super.partialSearch(line);
+			return super.partialSearch(line, limit);
 		} finally {
 			lock.unlockReadOnly();
 		}
 	}
 
 	@Override
-	public ArrayList<Result> exactSearch(Collection<String> line) {
+	public ArrayList<Result> exactSearch(Collection<String> line, int limit) {
 		lock.lockReadOnly();
 		try {
-			return super.exactSearch(line);
+			return super.exactSearch(line, limit);
 		} finally {
 			lock.unlockReadOnly();
 		}
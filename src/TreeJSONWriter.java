@@ -1,5 +1,6 @@
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
@@ -13,6 +14,55 @@ import java.util.TreeSet;
 
 public class TreeJSONWriter {
 
+	/** The number of characters buffered before writing to a file */
+	public static final int BUFFER_SIZE = 1 << 16;
+
+	/** The line separator, looked up once */
+	private static final String NEWLINE = System.lineSeparator();
+
+	/** The score format, one per thread since DecimalFormat is not thread safe */
+	private static final ThreadLocal<DecimalFormat> FORMATTER = ThreadLocal
+			.withInitial(() -> new DecimalFormat("0.000000"));
+
+	/**
+	 * Opens a buffered UTF-8 writer to the file with a fixed size buffer, so
+	 * writing a file of any size takes the same amount of memory.
+	 *
+	 * @param path the path to the file to write
+	 * @return the writer to the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static Writer newWriter(Path path) throws IOException {
+		return new BufferedWriter(
+				new OutputStreamWriter(Files.newOutputStream(path), StandardCharsets.UTF_8.newEncoder()), BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes the decimal digits of a number without creating a {@link String}.
+	 *
+	 * @param value  the number to write
+	 * @param writer the writer to use
+	 * @throws IOException if the writer encounters any issues
+	 */
+	public static void number(int value, Writer writer) throws IOException {
+		if (value < 0) {
+			if (value == Integer.MIN_VALUE) {
+				writer.write(Integer.toString(value));
+				return;
+			}
+			writer.write('-');
+			value = -value;
+		}
+		int divisor = 1;
+		while (value / divisor >= 10) {
+			divisor *= 10;
+		}
+		while (divisor > 0) {
+			writer.write('0' + value / divisor % 10);
+			divisor /= 10;
+		}
+	}
+
 	/**
 	 * Writes several tab <code>\t</code> symbols using the provided {@link Writer}.
 	 *
@@ -264,16 +314,43 @@ public class TreeJSONWriter {
 	}
 
 	/**
-	 * Returns the high nested map of elements formatted as a nested pretty JSON
-	 * object.
+	 * Writes the list of positions formatted as a pretty JSON array of numbers
+	 * using the provided {@link Writer} and indentation level.
 	 *
-	 * @param elements the elements to convert to JSON
+	 * @param elements the positions to convert to JSON
+	 * @param writer   the writer to use
+	 * @param level    the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asArray(TreeSet, Writer, int)
+	 */
+	public static void asArray(PositionList elements, Writer writer, int level) throws IOException {
+		writer.write('[');
+		writer.write(System.lineSeparator());
+		for (int i = 0; i < elements.size() - 1; i++) {
+			indent(level + 1, writer);
+			number(elements.get(i), writer);
+			writer.write(',');
+			writer.write(NEWLINE);
+		}
+		indent(level + 1, writer);
+		number(elements.last(), writer);
+		writer.write(NEWLINE);
+		indent(level, writer);
+		writer.write(']');
+	}
+
+	/**
+	 * Returns the words, locations and positions of an index formatted as a
+	 * nested pretty JSON object.
+	 *
+	 * @param cursor the cursor over the index to convert to JSON
 	 * @return containing the elements in pretty JSON format
 	 */
-	public static String asHighNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements) {
+	public static String asHighNestedObject(IndexCursor cursor) {
 		try {
 			StringWriter writer = new StringWriter();
-			asHighNestedObject(elements, writer, 0);
+			asHighNestedObject(cursor, writer, 0);
 			return writer.toString();
 		} catch (IOException e) {
 			return null;
@@ -281,50 +358,96 @@ public class TreeJSONWriter {
 	}
 
 	/**
-	 * Writes the map of elements formatted as a pretty JSON object to the specified
-	 * file.
+	 * Writes the words, locations and positions of an index formatted as a pretty
+	 * JSON object to the specified file.
 	 *
-	 * @param elements the elements to convert to JSON
-	 * @param path     the path to the file write to output
+	 * @param cursor the cursor over the index to convert to JSON
+	 * @param path   the path to the file write to output
 	 * @throws IOException if the writer encounters any issues
 	 */
-	public static void asHighNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Path path)
-			throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			asHighNestedObject(elements, writer, 0);
+	public static void asHighNestedObject(IndexCursor cursor, Path path) throws IOException {
+		try (Writer writer = newWriter(path)) {
+			asHighNestedObject(cursor, writer, 0);
 		}
 	}
 
 	/**
-	 * Writes the high nested map of elements as a nested pretty JSON object using
-	 * the provided and indentation level.
+	 * Writes the words, locations and positions of an index as a nested pretty
+	 * JSON object using the provided writer and indentation level. The cursor is
+	 * read once from start to end, so nothing is copied from the index.
 	 *
-	 * @param elements the elements to convert to JSON
-	 * @param writer   the writer to use
-	 * @param level    the initial indentation level
+	 * @param cursor the cursor over the index to convert to JSON
+	 * @param writer the writer to use
+	 * @param level  the initial indentation level
 	 * @throws IOException if the writer encounters any issues
 	 *
+	 * @see #asArray(PositionList, Writer, int)
 	 */
-	public static void asHighNestedObject(TreeMap<String, TreeMap<String, TreeSet<Integer>>> elements, Writer writer,
-			int level) throws IOException {
+	public static void asHighNestedObject(IndexCursor cursor, Writer writer, int level) throws IOException {
 		writer.write('{');
-		writer.write(System.lineSeparator());
+		writer.write(NEWLINE);
+		if (asWordEntries(cursor, writer, level + 1)) {
+			writer.write(NEWLINE);
+		}
+		indent(level, writer);
+		writer.write('}');
+	}
 
-		if (!elements.isEmpty()) {
-			for (String key : elements.headMap(elements.lastKey(), false).keySet()) {
-				indent(level + 1, writer);
-				quote(key, writer);
-				writer.write(": ");
-				asNestedObject(elements.get(key), writer, level + 1);
+	/**
+	 * Writes the words of the cursor as the comma separated members of a nested
+	 * pretty JSON object, without the surrounding braces or a final line
+	 * separator, so separate ranges of words can be written on their own and
+	 * joined with a comma.
+	 *
+	 * @param cursor the cursor over the index to convert to JSON
+	 * @param writer the writer to use
+	 * @param level  the indentation level of the words
+	 * @return true if at least one word was written
+	 * @throws IOException if the writer encounters any issues
+	 */
+	public static boolean asWordEntries(IndexCursor cursor, Writer writer, int level) throws IOException {
+		boolean first = true;
+		while (cursor.nextWord()) {
+			if (!first) {
 				writer.write(',');
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
+			}
+			indent(level, writer);
+			quote(cursor.word(), writer);
+			writer.write(": ");
+			asPositionObject(cursor, writer, level);
+			first = false;
+		}
+		return !first;
+	}
+
+	/**
+	 * Writes the locations and positions of the current word of the cursor as a
+	 * nested pretty JSON object using the provided writer and indentation level.
+	 *
+	 * @param cursor the cursor over the index, positioned on a word
+	 * @param writer the writer to use
+	 * @param level  the initial indentation level
+	 * @throws IOException if the writer encounters any issues
+	 *
+	 * @see #asNestedObject(TreeMap, Writer, int)
+	 */
+	private static void asPositionObject(IndexCursor cursor, Writer writer, int level) throws IOException {
+		writer.write('{');
+		writer.write(NEWLINE);
+		boolean first = true;
+		while (cursor.nextLocation()) {
+			if (!first) {
+				writer.write(',');
+				writer.write(NEWLINE);
 			}
 			indent(level + 1, writer);
-			quote(elements.lastKey(), writer);
+			quote(cursor.location(), writer);
 			writer.write(": ");
-			asNestedObject(elements.get(elements.lastKey()), writer, level + 1);
-			writer.write(System.lineSeparator());
+			asArray(cursor.positions(), writer, level + 1);
+			first = false;
 		}
+		writer.write(NEWLINE);
 		indent(level, writer);
 		writer.write('}');
 	}
@@ -339,7 +462,7 @@ public class TreeJSONWriter {
 	 */
 	public static void asResultNestedObject(TreeMap<String, ArrayList<Result>> result, Path path) throws IOException {
 
-		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+		try (Writer writer = newWriter(path)) {
 			asResultNestedObject(result, writer, 0);
 		}
 	}
@@ -356,31 +479,31 @@ public class TreeJSONWriter {
 	public static void asResultNestedObject(TreeMap<String, ArrayList<Result>> finalResults, Writer writer, int level)
 			throws IOException {
 		writer.write('[');
-		writer.write(System.lineSeparator());
+		writer.write(NEWLINE);
 		if (!finalResults.isEmpty()) {
 			for (String queryLine : finalResults.keySet()) {
 				indent(level + 1, writer);
 				writer.write('{');
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 2, writer);
 				quote("queries", writer);
 				writer.write(": ");
 				quote(queryLine, writer);
 				writer.write(",");
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 2, writer);
 				quote("results", writer);
 				writer.write(": ");
 				// list
 				asResultList(finalResults, writer, level, queryLine);
 				// list
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 1, writer);
 				writer.write('}');
 				if (!queryLine.equals(finalResults.lastKey())) {
 					writer.write(',');
 				}
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 			}
 			if (level == 0) {
 				writer.write(']');
@@ -406,29 +529,29 @@ public class TreeJSONWriter {
 		writer.write('[');
 		if (!finalResults.get(queryLine).isEmpty()) {
 			indent(level, writer);
-			writer.write(System.lineSeparator());
+			writer.write(NEWLINE);
 			indent(level + 1, writer);
 			Iterator<Result> it = finalResults.get(queryLine).iterator();
 			while (it.hasNext()) {
 				indent(level + 2, writer);
 				writer.write('{');
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 4, writer);
 				Result r = it.next();
 				// Query
 				asResultQuery(writer, level, r);
 				// Query
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 3, writer);
 				writer.write('}');
 				if (it.hasNext()) {
 					writer.write(',');
 				}
-				writer.write(System.lineSeparator());
+				writer.write(NEWLINE);
 				indent(level + 1, writer);
 			}
 		} else {
-			writer.write(System.lineSeparator());
+			writer.write(NEWLINE);
 			indent(level + 1, writer);
 		}
 		indent(level + 1, writer);
@@ -449,17 +572,16 @@ public class TreeJSONWriter {
 		writer.write(": ");
 		quote(r.where(), writer);
 		writer.write(",");
-		writer.write(System.lineSeparator());
+		writer.write(NEWLINE);
 		indent(level + 4, writer);
 		quote("count", writer);
 		writer.write(": ");
-		writer.write(String.valueOf(r.totalMatched()));
+		number(r.totalMatched(), writer);
 		writer.write(",");
-		writer.write(System.lineSeparator());
+		writer.write(NEWLINE);
 		indent(level + 4, writer);
 		quote("score", writer);
 		writer.write(": ");
-		DecimalFormat FORMATTER = new DecimalFormat("0.000000");
-		writer.write(FORMATTER.format(r.score()));
+		writer.write(FORMATTER.get().format(r.score()));
 	}
 }
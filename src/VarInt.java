@@ -0,0 +1,104 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes non-negative ints as variable length integers: seven bits
+ * per byte, lowest bits first, with the high bit set on every byte except the
+ * last. Small values such as position gaps take a single byte.
+ */
+public class VarInt {
+
+	/**
+	 * Write a value
+	 *
+	 * @param value the non-negative value to write
+	 * @param out   where to write it
+	 */
+	public static void write(int value, ByteArrayOutputStream out) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Give the number of bytes a value takes
+	 *
+	 * @param value the non-negative value
+	 * @return the encoded size in bytes
+	 */
+	public static int size(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Reads values from a buffer using absolute gets only, so any number of
+	 * readers can share the same buffer without locking.
+	 */
+	public static class Reader {
+
+		private final ByteBuffer buffer;
+		private int offset;
+
+		/**
+		 * Initialize a reader at this offset
+		 *
+		 * @param buffer the buffer to read
+		 * @param offset where to start
+		 */
+		public Reader(ByteBuffer buffer, int offset) {
+			this.buffer = buffer;
+			this.offset = offset;
+		}
+
+		/**
+		 * Read the next value
+		 *
+		 * @return the value
+		 */
+		public int read() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(offset++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		/**
+		 * Skip some bytes
+		 *
+		 * @param bytes how many bytes to skip
+		 */
+		public void skip(int bytes) {
+			offset += bytes;
+		}
+
+		/**
+		 * Move to this offset
+		 *
+		 * @param offset the new offset
+		 */
+		public void seek(int offset) {
+			this.offset = offset;
+		}
+
+		/**
+		 * Give the current offset
+		 *
+		 * @return the offset of the next value
+		 */
+		public int offset() {
+			return offset;
+		}
+	}
+}
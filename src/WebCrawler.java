@@ -1,20 +1,91 @@
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
+public class WebCrawler implements CrawlerInterface {
 
-public class WebCrawler {
+	/** The default number of pages fetched at once in the blocking fetch mode */
+	public static final int DEFAULT_FETCHES = 64;
 
-	private final WorkQueue worker;
-	private final ThreadSafeInvertedMap map;
-	HashSet<URL> pendingLink = new HashSet<URL>();
+	/** The default number of pages fetched at once from one host */
+	public static final int DEFAULT_PER_HOST = 4;
 
-	public WebCrawler(WorkQueue worker, ThreadSafeInvertedMap map) {
+	private final WorkExecutor worker;
+	private final WritableIndexInterface map;
+	/** The URLs claimed by the crawls so far */
+	private final SeenUrlSet seen;
+
+	/** Finds the pages that are not indexed because of an earlier page, or null */
+	private NearDuplicates duplicates;
+
+	/** Keeps the connections to the crawled hosts open between pages */
+	private final KeepAliveFetcher http;
+
+	/** Runs the blocking fetches, or null to fetch on the worker threads */
+	private final ExecutorService fetcher;
+	private final Semaphore fetches;
+	private final ConcurrentHashMap<String, Semaphore> hosts;
+	private final int perHost;
+
+	/** The pages of the current crawl that are not done yet, guarded by this */
+	private int outstanding;
+
+	public WebCrawler(WorkExecutor worker, WritableIndexInterface map) {
+		this.worker = worker;
+		this.map = map;
+		this.seen = new SeenUrlSet();
+		this.http = KeepAliveFetcher.shared();
+		this.fetcher = null;
+		this.fetches = null;
+		this.hosts = null;
+		this.perHost = 0;
+	}
+
+	/**
+	 * Initialize a crawler that fetches pages on their own threads, virtual
+	 * threads when the runtime has them, and only parses and indexes the pages on
+	 * the worker threads
+	 *
+	 * @param worker     the executor to parse and index the pages on
+	 * @param map        the index to add the pages to
+	 * @param maxFetches the maximum number of pages fetched at once
+	 * @param perHost    the maximum number of pages fetched at once from one host
+	 */
+	public WebCrawler(WorkExecutor worker, WritableIndexInterface map, int maxFetches, int perHost) {
 		this.worker = worker;
 		this.map = map;
-		this.pendingLink = new HashSet<URL>();
+		this.seen = new SeenUrlSet();
+		this.http = KeepAliveFetcher.shared();
+		this.fetcher = newFetchExecutor(maxFetches);
+		this.fetches = new Semaphore(maxFetches);
+		this.hosts = new ConcurrentHashMap<>();
+		this.perHost = perHost;
+	}
+
+	/**
+	 * Create an executor that starts a virtual thread for every fetch, falling
+	 * back to a fixed pool of daemon threads on runtimes without virtual threads
+	 *
+	 * @param threads the number of threads of the fallback pool
+	 * @return the executor to fetch on
+	 */
+	private static ExecutorService newFetchExecutor(int threads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return Executors.newFixedThreadPool(threads, task -> {
+				Thread thread = new Thread(task, "fetcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
 	}
 
 	/**
@@ -23,10 +94,165 @@ public class WebCrawler {
 	 * @param seed  the seed URL to crawl
 	 * @param limit the maximum amount of link
 	 */
+	@Override
 	public void crawl(URL seed, int limit) {
-		pendingLink.add(seed);
-		worker.execute(new CrawlerTask(seed, limit));
-		worker.finish();
+		seen.add(seed);
+		if (fetcher != null) {
+			crawlFetching(seed, limit);
+			return;
+		}
+		WorkExecutor.TaskGroup group = worker.group();
+		group.execute(new CrawlerTask(seed, limit, group));
+		try {
+			group.finish();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			System.out.println("Interrupted while crawling from this seed URL: " + seed);
+		} catch (ExecutionException e) {
+			System.out.println("Unable to crawl from this seed URL: " + seed);
+		}
+	}
+
+	/**
+	 * Crawl with the fetches on the fetch threads, waiting until every page found
+	 * has been fetched and indexed
+	 *
+	 * @param seed  the seed URL to crawl
+	 * @param limit the maximum amount of link
+	 */
+	private void crawlFetching(URL seed, int limit) {
+		synchronized (this) {
+			outstanding = 0;
+		}
+		fetch(seed, limit);
+		synchronized (this) {
+			try {
+				while (outstanding > 0) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				System.out.println("Interrupted while crawling from this seed URL: " + seed);
+			}
+		}
+	}
+
+	@Override
+	public void setDuplicates(NearDuplicates duplicates) {
+		this.duplicates = duplicates;
+	}
+
+	/**
+	 * Stop the fetch threads once no more crawls will be started
+	 */
+	@Override
+	public void shutdown() {
+		if (fetcher != null) {
+			fetcher.shutdown();
+		}
+	}
+
+	/**
+	 * Start fetching a page on the fetch threads. The page is then parsed and
+	 * indexed on the worker threads.
+	 *
+	 * @param url   the page to fetch
+	 * @param limit the maximum amount of link
+	 */
+	private void fetch(URL url, int limit) {
+		synchronized (this) {
+			outstanding++;
+		}
+		Runnable task = () -> {
+			boolean handedOff = false;
+			Semaphore host = hosts.computeIfAbsent(url.getHost().toLowerCase(Locale.ROOT), h -> new Semaphore(perHost));
+			try {
+				String html;
+				// the host permit is taken first, so a busy host does not hold global permits
+				host.acquire();
+				try {
+					fetches.acquire();
+					try {
+						html = HTMLFetcher.fetchHTML(url, 3, http);
+					} finally {
+						fetches.release();
+					}
+				} finally {
+					host.release();
+				}
+				if (html != null) {
+					worker.execute(() -> {
+						try {
+							HTMLScanner page = HTMLScanner.scan(html);
+							index(url, page.text());
+							for (URL link : page.links(url)) {
+								if (claim(link, limit)) {
+									fetch(link, limit);
+								}
+							}
+						} catch (IOException e) {
+							System.out.println("Unable to crawl from this seed URL: " + url);
+						} finally {
+							done();
+						}
+					});
+					handedOff = true;
+				}
+			} catch (IOException e) {
+				System.out.println("Unable to crawl from this seed URL: " + url);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (!handedOff) {
+					done();
+				}
+			}
+		};
+		try {
+			fetcher.execute(task);
+		} catch (RejectedExecutionException e) {
+			done();
+		}
+	}
+
+	/**
+	 * Mark one page of the current crawl as done
+	 */
+	private synchronized void done() {
+		outstanding--;
+		if (outstanding == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Stem and add the text of a fetched page to the index, unless it is a near
+	 * duplicate of an earlier page
+	 *
+	 * @param url  the page
+	 * @param text the text of the page without HTML
+	 */
+	private void index(URL url, String text) {
+		if (duplicates != null && !duplicates.add(text)) {
+			return;
+		}
+		String location = url.toString();
+		InvertedMap local = new InvertedMap();
+		new TextTokenizer().tokenize(text, 1,
+				(word, position) -> local.add(StemCache.stemWord(word), location, position));
+		map.addAll(local);
+	}
+
+	/**
+	 * Claim a link for this crawl if the limit has not been reached and it was not
+	 * claimed before
+	 *
+	 * @param link  the link found
+	 * @param limit the maximum amount of link
+	 * @return true if the link should be crawled
+	 */
+	private boolean claim(URL link, int limit) {
+		return seen.add(link, limit);
 	}
 
 	/**
@@ -40,6 +266,7 @@ public class WebCrawler {
 
 		private final URL oneURL;
 		private final int limit;
+		private final WorkExecutor.TaskGroup group;
 
 		/**
 		 * Take in a URL, parse it into a pure HTML text and store it in an InvertedMap.
@@ -48,10 +275,12 @@ public class WebCrawler {
 		 *
 		 * @param url
 		 * @param limit
+		 * @param group the group of tasks of this crawl
 		 */
-		public CrawlerTask(URL url, int limit) {
+		public CrawlerTask(URL url, int limit, WorkExecutor.TaskGroup group) {
 			this.oneURL = url;
 			this.limit = limit;
+			this.group = group;
 
 		}
 
@@ -59,28 +288,16 @@ public class WebCrawler {
 		public void run() {
 			String html = null;
 			try {
-				html = HTMLFetcher.fetchHTML(oneURL, 3);
+				html = HTMLFetcher.fetchHTML(oneURL, 3, http);
 				if (html == null) {
 					return;
 				}
-				if (html != null) {
-					int start = 1;
-					InvertedMap local = new InvertedMap();
-					SnowballStemmer stemmer = new SnowballStemmer(SnowballStemmer.ALGORITHM.ENGLISH);
-					for (String text : TextParser.parse(HTMLCleaner.stripHTML(html))) {
-						local.add(stemmer.stem(text).toString(), oneURL.toString(), start++);
-					}
-					map.addAll(local);
-					ArrayList<URL> links = LinkParser.listLinks(oneURL, LinkParser.fetchHTML(oneURL));
-					for (URL link : links) {
-						synchronized (pendingLink) {
-							if (pendingLink.size() < limit) {
-								if (!pendingLink.contains(link)) {
-									pendingLink.add(link);
-									worker.execute(new CrawlerTask(link, limit));
-								}
-							}
-						}
+				HTMLScanner page = HTMLScanner.scan(html);
+				index(oneURL, page.text());
+				ArrayList<URL> links = page.links(oneURL);
+				for (URL link : links) {
+					if (claim(link, limit)) {
+						group.execute(new CrawlerTask(link, limit, group));
 					}
 				}
 			} catch (IOException e) {
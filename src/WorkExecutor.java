@@ -0,0 +1,371 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs work on a work-stealing {@link ForkJoinPool}. Every piece of work
+ * returns a {@link Future}, so its result or exception is never lost, and can
+ * belong to a {@link TaskGroup} that is waited for on its own, so waiting for
+ * one query file does not wait for a crawl running at the same time.
+ *
+ * The number of tasks waiting or running is bounded: a thread outside the
+ * pool that submits work while the bound is reached waits for a task to
+ * finish. Tasks that submit more work from inside the pool are never made to
+ * wait, so they cannot deadlock the pool. The queue depth and the time tasks
+ * spend waiting and running are recorded.
+ */
+public class WorkExecutor {
+
+	/** The default number of threads to use when not specified. */
+	public static final int DEFAULT = 5;
+
+	/** The default number of tasks per thread that can wait or run at once */
+	public static final int DEFAULT_PENDING = 1024;
+
+	private final ForkJoinPool pool;
+	private final int threads;
+	private final Semaphore capacity;
+
+	private final AtomicInteger pending;
+	private final LongAdder submitted;
+	private final LongAdder completed;
+	private final LongAdder failed;
+	private final LongAdder waitNanos;
+	private final LongAdder runNanos;
+
+	/**
+	 * Starts an executor with the default number of threads.
+	 */
+	public WorkExecutor() {
+		this(DEFAULT);
+	}
+
+	/**
+	 * Starts an executor with the specified number of threads.
+	 *
+	 * @param threads number of worker threads
+	 */
+	public WorkExecutor(int threads) {
+		this(threads, threads * DEFAULT_PENDING);
+	}
+
+	/**
+	 * Starts an executor with the specified number of threads and bound on
+	 * pending tasks.
+	 *
+	 * @param threads    number of worker threads
+	 * @param maxPending the number of tasks that can wait or run at once before
+	 *                   outside threads have to wait to submit more
+	 */
+	public WorkExecutor(int threads, int maxPending) {
+		this.threads = Math.max(threads, 1);
+		this.pool = new ForkJoinPool(this.threads);
+		this.capacity = new Semaphore(Math.max(maxPending, 1));
+		this.pending = new AtomicInteger();
+		this.submitted = new LongAdder();
+		this.completed = new LongAdder();
+		this.failed = new LongAdder();
+		this.waitNanos = new LongAdder();
+		this.runNanos = new LongAdder();
+	}
+
+	/**
+	 * Runs the work on the pool, not belonging to any group. An exception it
+	 * throws is reported, since nothing else will see it.
+	 *
+	 * @param task the work to run
+	 */
+	public void execute(Runnable task) {
+		submit(Executors.callable(task), null);
+	}
+
+	/**
+	 * Runs work that returns a value on the pool.
+	 *
+	 * @param <T>  the type of the value returned by the work
+	 * @param task the work to run
+	 * @return the future result of the work
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		return submit(task, null);
+	}
+
+	/**
+	 * Runs a fork-join task on the pool and waits for its result.
+	 *
+	 * @param <T>  the type of the result
+	 * @param task the task to run
+	 * @return the result of the task
+	 */
+	public <T> T invoke(ForkJoinTask<T> task) {
+		return pool.invoke(task);
+	}
+
+	/**
+	 * Start a new group of tasks that can be waited for on its own
+	 *
+	 * @return the new group
+	 */
+	public TaskGroup group() {
+		return new TaskGroup();
+	}
+
+	/**
+	 * Runs work on the pool, counting it in the group if there is one
+	 *
+	 * @param <T>   the type of the value returned by the work
+	 * @param task  the work to run
+	 * @param group the group of the work, or null
+	 * @return the future result of the work
+	 */
+	private <T> Future<T> submit(Callable<T> task, TaskGroup group) {
+		boolean bounded = ForkJoinTask.getPool() != pool;
+		if (bounded) {
+			capacity.acquireUninterruptibly();
+		}
+		if (group != null) {
+			group.started();
+		}
+		long queued = System.nanoTime();
+		pending.incrementAndGet();
+		submitted.increment();
+
+		AtomicBoolean started = new AtomicBoolean();
+		Callable<T> timed = () -> {
+			long start = System.nanoTime();
+			started.set(true);
+			pending.decrementAndGet();
+			waitNanos.add(start - queued);
+			try {
+				return task.call();
+			} catch (Throwable e) {
+				failed.increment();
+				if (group != null) {
+					group.failed(e);
+				}
+				System.err.println("Warning: Work executor encountered an exception while running: " + e);
+				throw e;
+			} finally {
+				runNanos.add(System.nanoTime() - start);
+			}
+		};
+		// done() also runs for work cancelled before it started, so nothing leaks
+		FutureTask<T> future = new FutureTask<T>(timed) {
+			@Override
+			protected void done() {
+				if (!started.get()) {
+					pending.decrementAndGet();
+				}
+				completed.increment();
+				if (bounded) {
+					capacity.release();
+				}
+				if (group != null) {
+					group.finished();
+				}
+			}
+		};
+
+		try {
+			pool.execute(future);
+		} catch (RejectedExecutionException e) {
+			future.cancel(false);
+			throw e;
+		}
+		return future;
+	}
+
+	/**
+	 * Asks the executor to shutdown. Work already submitted is still finished.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Waits for the work already submitted to finish after a shutdown
+	 *
+	 * @param timeout the longest time to wait
+	 * @param unit    the unit of the timeout
+	 * @return true if all the work finished
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return pool.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Returns the number of worker threads being used by the executor.
+	 *
+	 * @return number of worker threads
+	 */
+	public int size() {
+		return threads;
+	}
+
+	/**
+	 * Give the number of tasks waiting to run
+	 *
+	 * @return the queue depth
+	 */
+	public int pending() {
+		return pending.get();
+	}
+
+	/**
+	 * Give the number of tasks that finished, including the failed ones
+	 *
+	 * @return the number of finished tasks
+	 */
+	public long completed() {
+		return completed.sum();
+	}
+
+	/**
+	 * Give the number of tasks that threw an exception
+	 *
+	 * @return the number of failed tasks
+	 */
+	public long failed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Give the average time a task waited in the queue before it started
+	 *
+	 * @return the average wait in milliseconds
+	 */
+	public double averageWaitMillis() {
+		long count = submitted.sum() - pending.get();
+		return count <= 0 ? 0 : waitNanos.sum() / 1e6 / count;
+	}
+
+	/**
+	 * Give the average time a task took to run
+	 *
+	 * @return the average run time in milliseconds
+	 */
+	public double averageRunMillis() {
+		long count = completed.sum();
+		return count == 0 ? 0 : runNanos.sum() / 1e6 / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"WorkExecutor: %d threads, %d pending, %d completed, %d failed, %.3f ms average wait, %.3f ms average run",
+				threads, pending(), completed(), failed(), averageWaitMillis(), averageRunMillis());
+	}
+
+	/**
+	 * A group of tasks that can be waited for without waiting for the rest of the
+	 * work on the executor. Tasks of the group may add more tasks to it while it
+	 * is being waited for.
+	 */
+	public class TaskGroup {
+
+		private int pending;
+		private Throwable failure;
+
+		/**
+		 * Initialize an empty group
+		 */
+		private TaskGroup() {
+			this.pending = 0;
+			this.failure = null;
+		}
+
+		/**
+		 * Runs the work on the pool as part of this group
+		 *
+		 * @param task the work to run
+		 */
+		public void execute(Runnable task) {
+			WorkExecutor.this.submit(Executors.callable(task), this);
+		}
+
+		/**
+		 * Runs work that returns a value on the pool as part of this group
+		 *
+		 * @param <T>  the type of the value returned by the work
+		 * @param task the work to run
+		 * @return the future result of the work
+		 */
+		public <T> Future<T> submit(Callable<T> task) {
+			return WorkExecutor.this.submit(task, this);
+		}
+
+		/**
+		 * Count a task that was submitted
+		 */
+		private synchronized void started() {
+			pending++;
+		}
+
+		/**
+		 * Remember the first exception thrown by a task
+		 *
+		 * @param e the exception
+		 */
+		private synchronized void failed(Throwable e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+
+		/**
+		 * Count a task that finished, waking the waiting threads if it was the last
+		 */
+		private synchronized void finished() {
+			pending--;
+			if (pending <= 0) {
+				notifyAll();
+			}
+		}
+
+		/**
+		 * Waits for every task of this group, including the ones added while
+		 * waiting, to finish.
+		 *
+		 * @throws InterruptedException if interrupted while waiting
+		 * @throws ExecutionException   if a task of the group threw an exception,
+		 *                              with the first one as its cause
+		 */
+		public synchronized void finish() throws InterruptedException, ExecutionException {
+			while (pending > 0) {
+				wait();
+			}
+			if (failure != null) {
+				throw new ExecutionException(failure);
+			}
+		}
+
+		/**
+		 * Give the number of tasks of this group that have not finished
+		 *
+		 * @return the number of unfinished tasks
+		 */
+		public synchronized int pending() {
+			return pending;
+		}
+
+		/**
+		 * Give the first exception thrown by a task of this group
+		 *
+		 * @return the exception, or null if no task failed
+		 */
+		public synchronized Throwable failure() {
+			return failure;
+		}
+	}
+}
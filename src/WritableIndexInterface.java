@@ -0,0 +1,31 @@
+/**
+ * An inverted index that words can be added to, by a single builder or by
+ * several crawling and indexing threads at once depending on the
+ * implementation.
+ */
+public interface WritableIndexInterface extends IndexInterface {
+
+	/**
+	 * Add the word
+	 *
+	 * @param word     the word you want to add
+	 * @param location the loading location
+	 * @param position the position word was found
+	 */
+	public void add(String word, String location, int position);
+
+	/**
+	 * Add a temporary inverted index to this index
+	 *
+	 * @param index inverted index
+	 */
+	public void addAll(InvertedMap index);
+
+	/**
+	 * Copy this index into an immutable, compressed snapshot for searching once
+	 * the index will not change anymore
+	 *
+	 * @return the snapshot of this index
+	 */
+	public IndexSnapshot freeze();
+}